@@ -0,0 +1,116 @@
+package com.mayreh.kalc.benchmark;
+
+import static java.util.Collections.singletonList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mayreh.kalc.AclCheckContext;
+import com.mayreh.kalc.AclCheckContext.IntersectionResult;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.AclCheckOptions;
+import com.mayreh.kalc.AclConstraint;
+import com.mayreh.kalc.AclConstraint.AclOperationCondition;
+import com.mayreh.kalc.AclConstraint.EqualityOperator;
+import com.mayreh.kalc.AclConstraint.ResourceCondition;
+import com.mayreh.kalc.AclConstraint.StringCondition;
+import com.mayreh.kalc.AclConstraint.StringOperator;
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.AclPolicy.Entry.PermissionType;
+
+/**
+ * Measures the latency of intersection and supersetOf checks against a synthetic base policy,
+ * with typical targets of CI expectations: a single request and a sample of the base policy itself.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class CheckBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    private int size;
+
+    @Param({"0.3"})
+    private double prefixedRatio;
+
+    @Param({"0.05"})
+    private double wildcardRatio;
+
+    @Param({"0.05"})
+    private double denyRatio;
+
+    @Param({"true", "false"})
+    private boolean syntacticEngine;
+
+    private AclPolicy base;
+    private AclPolicy singleRequest;
+    private AclPolicy sample;
+    private AclCheckContext ctx;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        base = new PolicyGenerator(size, prefixedRatio, wildcardRatio, denyRatio).generate();
+        singleRequest = new AclConstraint(
+                literal(PolicyGenerator.principal(0)),
+                literal("192.0.2.1"),
+                new AclOperationCondition(EqualityOperator.Eq, AclOperation.READ),
+                new ResourceCondition(ResourceType.TOPIC, literal(PolicyGenerator.topic(0)))).toPolicy();
+
+        List<Entry> sampleEntries = new ArrayList<>();
+        for (int i = 0; i < base.entries().size(); i += 100) {
+            Entry entry = base.entries().get(i);
+            if (entry.permission() == PermissionType.Allow) {
+                sampleEntries.add(entry);
+            }
+        }
+        sample = new AclPolicy(sampleEntries);
+
+        ctx = new AclCheckContext(AclCheckOptions.builder()
+                                                 .syntacticEngine(syntacticEngine)
+                                                 .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public IntersectionResult intersectionSingleRequest() {
+        return ctx.intersection(base, singleRequest);
+    }
+
+    @Benchmark
+    public SupersetResult supersetOfSingleRequest() {
+        return ctx.supersetOf(base, singleRequest);
+    }
+
+    @Benchmark
+    public SupersetResult supersetOfSample() {
+        return ctx.supersetOf(base, sample);
+    }
+
+    private static StringCondition literal(String value) {
+        return new StringCondition(false, StringOperator.In, singletonList(value));
+    }
+}
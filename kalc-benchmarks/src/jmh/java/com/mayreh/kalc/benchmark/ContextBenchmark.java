@@ -0,0 +1,30 @@
+package com.mayreh.kalc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mayreh.kalc.AclCheckContext;
+
+/**
+ * Measures the cost of constructing {@link AclCheckContext}, i.e. Z3 context, sorts and constants.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContextBenchmark {
+    @Benchmark
+    public void construct() {
+        try (AclCheckContext ctx = new AclCheckContext()) {
+            // just construct and close
+        }
+    }
+}
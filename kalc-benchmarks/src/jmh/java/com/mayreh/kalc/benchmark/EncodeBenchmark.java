@@ -0,0 +1,70 @@
+package com.mayreh.kalc.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mayreh.kalc.AclCheckContext;
+import com.mayreh.kalc.AclCheckContext.BaseCheck;
+import com.mayreh.kalc.AclCheckOptions;
+import com.mayreh.kalc.AclPolicy;
+
+/**
+ * Measures the cost of encoding and asserting a policy, without solving.
+ * The encoding cache is disabled unless {@code cached} is set, so each invocation encodes from scratch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodeBenchmark {
+    @Param({"100", "1000", "10000", "100000"})
+    private int size;
+
+    @Param({"0.3"})
+    private double prefixedRatio;
+
+    @Param({"0.05"})
+    private double wildcardRatio;
+
+    @Param({"0.05"})
+    private double denyRatio;
+
+    @Param({"false", "true"})
+    private boolean cached;
+
+    private AclPolicy policy;
+    private AclCheckContext ctx;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        policy = new PolicyGenerator(size, prefixedRatio, wildcardRatio, denyRatio).generate();
+        ctx = new AclCheckContext(AclCheckOptions.builder()
+                                                 .encodingCacheSize(cached ? Integer.MAX_VALUE : 0)
+                                                 .build());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ctx.close();
+    }
+
+    @Benchmark
+    public BaseCheck encode() {
+        return ctx.withBase(policy);
+    }
+}
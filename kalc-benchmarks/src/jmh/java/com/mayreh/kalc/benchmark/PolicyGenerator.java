@@ -0,0 +1,103 @@
+package com.mayreh.kalc.benchmark;
+
+import static java.util.Collections.singletonList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+
+import com.mayreh.kalc.AclConstraint;
+import com.mayreh.kalc.AclConstraint.AclOperationCondition;
+import com.mayreh.kalc.AclConstraint.EqualityOperator;
+import com.mayreh.kalc.AclConstraint.ResourceCondition;
+import com.mayreh.kalc.AclConstraint.StringCondition;
+import com.mayreh.kalc.AclConstraint.StringOperator;
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.AclPolicy.Entry.PermissionType;
+
+/**
+ * Generates synthetic policies which resemble the ones dumped from real clusters.
+ * Generation is deterministic for the same parameters.
+ */
+public class PolicyGenerator {
+    private static final AclOperation[] OPERATIONS = {
+            AclOperation.READ,
+            AclOperation.WRITE,
+            AclOperation.DESCRIBE,
+            AclOperation.CREATE,
+            AclOperation.ALL,
+    };
+    private static final long SEED = 42L;
+
+    private final int size;
+    private final double prefixedRatio;
+    private final double wildcardRatio;
+    private final double denyRatio;
+
+    /**
+     * @param size number of entries
+     * @param prefixedRatio ratio of entries whose resource name is PREFIXED
+     * @param wildcardRatio ratio of entries whose resource name is the wildcard
+     * @param denyRatio ratio of Deny entries
+     */
+    public PolicyGenerator(int size, double prefixedRatio, double wildcardRatio, double denyRatio) {
+        this.size = size;
+        this.prefixedRatio = prefixedRatio;
+        this.wildcardRatio = wildcardRatio;
+        this.denyRatio = denyRatio;
+    }
+
+    /**
+     * Number of distinct principals
+     */
+    public int principals() {
+        return Math.max(1, size / 10);
+    }
+
+    public static String principal(int i) {
+        return "service-" + i;
+    }
+
+    public static String topic(int i) {
+        return "team-" + (i % 100) + ".topic-" + i;
+    }
+
+    public AclPolicy generate() {
+        Random random = new Random(SEED);
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            PermissionType permission = random.nextDouble() < denyRatio
+                                        ? PermissionType.Deny
+                                        : PermissionType.Allow;
+
+            double pattern = random.nextDouble();
+            final StringCondition resourceName;
+            if (pattern < wildcardRatio) {
+                resourceName = literal(AclConstraint.WILDCARD);
+            } else if (pattern < wildcardRatio + prefixedRatio) {
+                resourceName = new StringCondition(
+                        false, StringOperator.StartWith, singletonList("team-" + random.nextInt(100) + '.'));
+            } else {
+                resourceName = literal(topic(random.nextInt(size)));
+            }
+
+            entries.add(new Entry(
+                    permission,
+                    new AclConstraint(
+                            literal(principal(random.nextInt(principals()))),
+                            literal(AclConstraint.WILDCARD),
+                            new AclOperationCondition(
+                                    EqualityOperator.Eq, OPERATIONS[random.nextInt(OPERATIONS.length)]),
+                            new ResourceCondition(ResourceType.TOPIC, resourceName))));
+        }
+        return new AclPolicy(entries);
+    }
+
+    private static StringCondition literal(String value) {
+        return new StringCondition(false, StringOperator.In, singletonList(value));
+    }
+}
@@ -0,0 +1,216 @@
+package com.mayreh.kalc.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mayreh.kalc.AclCheckContext.Engine;
+import com.mayreh.kalc.AclCheckContext.IntersectionResult;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.AclCheckContextPool;
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.AclPolicySnapshot;
+import com.mayreh.kalc.RequestTuple;
+import com.mayreh.kalc.Utils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * HTTP endpoint which answers checks on warm {@link AclCheckContextPool}, so that
+ * repeated checks don't pay for JVM startup, loading Z3 and constructing contexts.
+ *
+ * POST /check accepts a JSON object with "check" (intersection or supersetOf) and
+ * base/target policies given either inline as "basePolicy"/"targetPolicy" or
+ * as paths by "basePolicyFile"/"targetPolicyFile".
+ * Paths are resolved against the policy directory and must not point outside of it.
+ * They are rejected if no policy directory is configured.
+ * Parsed policies are cached by the SHA-256 of their content.
+ * Malformed requests, including request bodies larger than the limit, are answered with 400.
+ */
+class CheckServer implements AutoCloseable {
+    private final ObjectMapper mapper;
+    private final AclCheckContextPool pool;
+    private final Optional<Path> policyDir;
+    private final Map<String, AclPolicy> policyCache;
+    private final int maxRequestBytes;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    CheckServer(ObjectMapper mapper,
+                AclCheckContextPool pool,
+                InetSocketAddress address,
+                int threads,
+                int policyCacheSize,
+                int maxRequestBytes,
+                Optional<Path> policyDir) throws IOException {
+        this.mapper = mapper;
+        this.pool = pool;
+        this.policyDir = policyDir.isPresent() ? Optional.of(policyDir.get().toRealPath()) : Optional.empty();
+        this.maxRequestBytes = maxRequestBytes;
+        policyCache = new LinkedHashMap<String, AclPolicy>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AclPolicy> eldest) {
+                return size() > policyCacheSize;
+            }
+        };
+
+        executor = Utils.daemonThreadPool("kalc-server", threads);
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/check", this::handleCheck);
+        server.createContext("/health", exchange -> respond(exchange, 200, mapper.createObjectNode()));
+    }
+
+    void start() {
+        server.start();
+    }
+
+    InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleCheck(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, error("Only POST is allowed"));
+                return;
+            }
+            JsonNode request = mapper.readTree(readAll(exchange.getRequestBody()));
+            respond(exchange, 200, check(request));
+        } catch (IllegalArgumentException | IOException e) {
+            respond(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            respond(exchange, 500, error(String.valueOf(e)));
+        }
+    }
+
+    private ObjectNode check(JsonNode request) throws IOException {
+        String check = request.path("check").asText();
+        AclPolicy basePolicy = policy(request, "basePolicy");
+        AclPolicy targetPolicy = policy(request, "targetPolicy");
+
+        long start = System.nanoTime();
+        ObjectNode response = mapper.createObjectNode();
+        switch (check) {
+            case "intersection":
+                IntersectionResult intersection = pool.intersection(basePolicy, targetPolicy);
+                response.put("result", intersection.intersects());
+                writeResult(response, intersection.example(), intersection.engine(), intersection.unknownReason());
+                break;
+            case "supersetOf":
+                SupersetResult superset = pool.supersetOf(basePolicy, targetPolicy);
+                response.put("result", superset.isSuperset());
+                writeResult(response, superset.counterexample(), superset.engine(), superset.unknownReason());
+                response.put("uncoveredEntry", superset.uncoveredEntry().orElse(null));
+                break;
+            default:
+                throw new IllegalArgumentException("check must be either intersection or supersetOf: " + check);
+        }
+        response.put("elapsedMillis", (System.nanoTime() - start) / 1_000_000L);
+        return response;
+    }
+
+    private void writeResult(ObjectNode response,
+                             Optional<RequestTuple> example,
+                             Engine engine,
+                             Optional<String> unknownReason) {
+        response.set("example", example.<JsonNode>map(mapper::valueToTree).orElse(null));
+        response.put("engine", engine.name());
+        response.put("unknownReason", unknownReason.orElse(null));
+    }
+
+    /**
+     * Resolve the policy given inline or by the file path.
+     */
+    private AclPolicy policy(JsonNode request, String name) throws IOException {
+        if (request.hasNonNull(name)) {
+            return cachedPolicy(mapper.writeValueAsBytes(request.get(name)));
+        }
+        String fileField = name + "File";
+        if (request.hasNonNull(fileField)) {
+            if (!policyDir.isPresent()) {
+                throw new IllegalArgumentException(fileField + " is not allowed without --policy-dir");
+            }
+            // resolve symlinks too, so that a link in the directory can't point outside of it
+            Path path = policyDir.get().resolve(request.get(fileField).asText()).normalize().toRealPath();
+            if (!path.startsWith(policyDir.get())) {
+                throw new IllegalArgumentException(fileField + " must be in the policy directory");
+            }
+            return cachedPolicy(Files.readAllBytes(path));
+        }
+        throw new IllegalArgumentException("Either " + name + " or " + fileField + " is required");
+    }
+
+    /**
+     * Parse the policy, or returns the cached one if the same content was parsed before.
+     */
+    AclPolicy cachedPolicy(byte[] content) throws IOException {
+        String digest = Utils.hex(Utils.sha256().digest(content));
+        synchronized (policyCache) {
+            AclPolicy cached = policyCache.get(digest);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final AclPolicy policy;
+        // parse the content which was hashed, as the file may have been replaced since then
+        if (AclPolicySnapshot.isSnapshot(content)) {
+            policy = AclPolicySnapshot.read(ByteBuffer.wrap(content));
+        } else {
+            // YAML is a superset of JSON so inline policies can be parsed by the same mapper
+            policy = Cli.mapper.readValue(content, AclPolicy.class);
+        }
+        synchronized (policyCache) {
+            policyCache.put(digest, policy);
+        }
+        return policy;
+    }
+
+    private ObjectNode error(String message) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("error", message);
+        return node;
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = is.read(buffer)) >= 0) {
+            if (os.size() + n > maxRequestBytes) {
+                throw new IllegalArgumentException("Request body exceeds " + maxRequestBytes + " bytes");
+            }
+            os.write(buffer, 0, n);
+        }
+        return os.toByteArray();
+    }
+}
@@ -1,42 +1,95 @@
 package com.mayreh.kalc.cli;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.util.Collection;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.apache.kafka.clients.admin.Admin;
-import org.apache.kafka.clients.admin.AdminClientConfig;
-import org.apache.kafka.common.acl.AclBinding;
-import org.apache.kafka.common.acl.AclBindingFilter;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
 import com.mayreh.kalc.AclCheckContext;
+import com.mayreh.kalc.AclCheckContext.DiffResult;
+import com.mayreh.kalc.AclCheckContext.Explanation;
 import com.mayreh.kalc.AclCheckContext.IntersectionResult;
 import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.AclCheckContextPool;
+import com.mayreh.kalc.AclCheckOptions;
+import com.mayreh.kalc.AclCheckOptions.StringSolver;
 import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.AclPolicySnapshot;
+import com.mayreh.kalc.CheckStats;
+import com.mayreh.kalc.EnumerationOptions;
+import com.mayreh.kalc.EnumerationOptions.Field;
+import com.mayreh.kalc.PortfolioChecker;
+import com.mayreh.kalc.RequestTuple;
+import com.mayreh.kalc.ResultCache;
 import com.mayreh.kalc.cli.Cli.Check;
+import com.mayreh.kalc.cli.Cli.CheckSuite;
+import com.mayreh.kalc.cli.Cli.Compare;
+import com.mayreh.kalc.cli.Cli.Diff;
 import com.mayreh.kalc.cli.Cli.Dump;
+import com.mayreh.kalc.cli.Cli.Minimize;
+import com.mayreh.kalc.cli.Cli.Replay;
+import com.mayreh.kalc.cli.Cli.Serve;
+import com.mayreh.kalc.cli.PolicyComparator.Comparison;
+import com.mayreh.kalc.cli.PolicyComparator.Relation;
+import com.mayreh.kalc.cli.Replayer.DiffKey;
+import com.mayreh.kalc.cli.Replayer.Report;
+import com.mayreh.kalc.cli.SuiteRunner.Outcome;
+import com.mayreh.kalc.cli.SuiteRunner.Status;
 
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
 import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.Spec;
 
 @Command(name = "kalc",
         description = "Kafka ACL checker",
-        subcommands = { Dump.class, Check.class },
+        subcommands = { Dump.class, Check.class, CheckSuite.class, Minimize.class, Diff.class, Compare.class,
+                        Replay.class, Serve.class },
         mixinStandardHelpOptions = true)
 public class Cli implements Runnable {
-    private static final ObjectMapper mapper = YAMLMapper
+    static final ObjectMapper mapper = YAMLMapper
+            .builder()
+            .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
+            .visibility(PropertyAccessor.FIELD, Visibility.ANY)
+            .build();
+    private static final ObjectMapper jsonMapper = JsonMapper
             .builder()
             .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS)
             .visibility(PropertyAccessor.FIELD, Visibility.ANY)
@@ -51,46 +104,120 @@ public class Cli implements Runnable {
     }
 
     public static void main(String[] args) {
-        new CommandLine(new Cli()).execute(args);
+        System.exit(new CommandLine(new Cli()).execute(args));
     }
 
     @Command(name = "dump",
-            description = "Dump ACL entries in the Kafka cluster to the YAML")
-    static class Dump implements IORunnable {
-        @Option(names = "--bootstrap-servers",
-                required = true)
+            description = "Dump ACL entries in the Kafka cluster to the YAML. "
+                          + "With --clusters, dumps many clusters concurrently and exits with 1 if any of them failed")
+    static class Dump implements Callable<Integer> {
+        @Option(names = "--bootstrap-servers")
         private String bootstrapServers;
 
         @Option(names = "--command-config")
         private File commandConfigFile;
 
-        @Option(names = "--output",
-                required = true)
+        @Option(names = "--output")
         private File outputFile;
 
+        @Option(names = "--clusters",
+                description = "YAML file listing clusters to dump instead of --bootstrap-servers")
+        private File clustersFile;
+
+        @Option(names = "--output-dir",
+                description = "Directory to write a policy file per cluster. Required with --clusters")
+        private File outputDir;
+
+        @Option(names = "--parallelism",
+                defaultValue = "4",
+                description = "Number of clusters to dump concurrently")
+        private int parallelism;
+
+        @Option(names = "--cluster-timeout",
+                defaultValue = "60000",
+                description = "Time limit in milliseconds to dump a cluster per attempt. 0 means no limit")
+        private long clusterTimeoutMillis;
+
+        @Option(names = "--retries",
+                defaultValue = "2",
+                description = "Number of retries for each cluster")
+        private int retries;
+
+        @Option(names = "--retry-backoff",
+                defaultValue = "1000",
+                description = "Backoff in milliseconds before retrying, multiplied by the number of attempts")
+        private long retryBackoffMillis;
+
+        @Option(names = "--format",
+                defaultValue = "yaml",
+                description = "One of ${COMPLETION-CANDIDATES}")
+        private Format format;
+
+        @Spec
+        private CommandSpec spec;
+
+        enum Format {
+            yaml,
+            binary,
+        }
+
         @Override
-        public void runIO() throws IOException {
-            Properties props = new Properties();
-            props.setProperty(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-            props.setProperty(AdminClientConfig.CLIENT_ID_CONFIG, "kalc-admin-client");
+        public Integer call() throws IOException {
+            if (clustersFile != null) {
+                if (outputDir == null) {
+                    throw new ParameterException(spec.commandLine(), "--output-dir is required with --clusters");
+                }
+                return dumpClusters();
+            }
+            if (bootstrapServers == null || outputFile == null) {
+                throw new ParameterException(
+                        spec.commandLine(), "Either --bootstrap-servers and --output, or --clusters is required");
+            }
 
+            Properties commandConfig = new Properties();
             if (commandConfigFile != null) {
-                Properties commandConfig = new Properties();
                 try (FileInputStream is = new FileInputStream(commandConfigFile)) {
                     commandConfig.load(is);
                 }
-                props.putAll(commandConfig);
             }
 
-            try (Admin admin = Admin.create(props)) {
-                Collection<AclBinding> bindings = admin.describeAcls(AclBindingFilter.ANY).values().get();
-                mapper.writeValue(outputFile, AclPolicy.fromAclBindings(bindings));
-            } catch (ExecutionException e) {
+            try (Admin admin = Admin.create(ClusterDumper.adminProperties(bootstrapServers, commandConfig));
+                 EntryWriter writer = format == Format.binary
+                                      ? binaryWriter(outputFile)
+                                      : yamlWriter(outputFile)) {
+                ClusterDumper.dumpAcls(admin, writer, Duration.ZERO);
+            } catch (ExecutionException | TimeoutException e) {
                 throw new RuntimeException(e);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw new RuntimeException(e);
             }
+            return 0;
+        }
+
+        private int dumpClusters() throws IOException {
+            ClusterDumper.Clusters clusters = mapper.readValue(clustersFile, ClusterDumper.Clusters.class);
+            ClusterDumper dumper = new ClusterDumper(
+                    clusters,
+                    clustersFile.getAbsoluteFile().toPath().getParent(),
+                    outputDir.toPath(),
+                    format,
+                    Duration.ofMillis(clusterTimeoutMillis),
+                    retries,
+                    Duration.ofMillis(retryBackoffMillis));
+            // results are streamed as NDJSON in completion order
+            List<ClusterDumper.Outcome> outcomes = dumper.run(parallelism, outcome -> {
+                ObjectNode node = jsonMapper.createObjectNode();
+                node.put("cluster", outcome.name());
+                node.put("succeeded", outcome.succeeded());
+                node.put("attempts", outcome.attempts());
+                node.put("entries", outcome.entries());
+                node.put("output", outcome.output().map(String::valueOf).orElse(null));
+                node.put("message", outcome.message().orElse(null));
+                node.put("elapsedMillis", outcome.elapsedNanos() / 1_000_000L);
+                System.out.println(node);
+            });
+            return outcomes.stream().allMatch(ClusterDumper.Outcome::succeeded) ? 0 : 1;
         }
     }
 
@@ -109,6 +236,45 @@ public class Cli implements Runnable {
                 required = true)
         private Expectation check;
 
+        @Option(names = "--examples",
+                defaultValue = "1",
+                description = "Max number of examples to enumerate")
+        private int examples;
+
+        @Option(names = "--distinct-by",
+                description = "Field which must differ between enumerated examples. "
+                              + "Can be repeated. One of ${COMPLETION-CANDIDATES}")
+        private List<Field> distinctBy = new ArrayList<>();
+
+        @Option(names = "--stats",
+                description = "Print performance statistics of the check. One of ${COMPLETION-CANDIDATES}")
+        private StatsFormat stats;
+
+        @Option(names = "--explain",
+                description = "Print the entries which decide a non-intersecting or superset result")
+        private boolean explain;
+
+        @Option(names = "--cache-dir",
+                description = "Directory to cache results keyed by the content of the policies and options")
+        private File cacheDir;
+
+        @Option(names = "--cache-max-size",
+                defaultValue = "67108864",
+                description = "Max total size of the cache directory in bytes")
+        private long cacheMaxBytes;
+
+        @Option(names = "--portfolio",
+                description = "Race several solver configurations and take the first definitive result")
+        private boolean portfolio;
+
+        @Mixin
+        private SolverOptions solverOptions;
+
+        @Spec
+        private CommandSpec spec;
+
+        private Optional<String> winner = Optional.empty();
+
         private enum Expectation {
             intersection,
             supersetOf,
@@ -116,26 +282,551 @@ public class Cli implements Runnable {
 
         @Override
         public void runIO() throws IOException {
-            AclPolicy basePolicy = mapper.readValue(basePolicyFile, AclPolicy.class);
-            AclPolicy targetPolicy = mapper.readValue(targetPolicyFile, AclPolicy.class);
-
-            try (AclCheckContext ctx = new AclCheckContext()) {
-                switch (check) {
-                    case intersection:
-                        IntersectionResult intersection = ctx.intersection(basePolicy, targetPolicy);
-                        System.out.printf("Result  : %s\n", intersection.intersects());
-                        System.out.printf("Example : %s\n", intersection.example());
-                        break;
-                    case supersetOf:
-                        SupersetResult supersetResult = ctx.supersetOf(basePolicy, targetPolicy);
-                        System.out.printf("Result          : %s\n", supersetResult.isSuperset());
-                        System.out.printf("Counter Example : %s\n", supersetResult.counterexample());
-                        break;
+            validateOptions();
+            AclPolicy basePolicy = readPolicy(basePolicyFile);
+            AclPolicy targetPolicy = readPolicy(targetPolicyFile);
+
+            AclCheckOptions options = solverOptions.toOptions()
+                                                   .toBuilder()
+                                                   .collectStats(stats != null)
+                                                   .explain(explain)
+                                                   .build();
+            if (examples > 1) {
+                EnumerationOptions enumerationOptions =
+                        EnumerationOptions.builder()
+                                          .limit(examples)
+                                          .distinctBy(distinctBy.isEmpty()
+                                                      ? EnumSet.allOf(Field.class)
+                                                      : EnumSet.copyOf(distinctBy))
+                                          .build();
+                try (AclCheckContext ctx = new AclCheckContext(options)) {
+                    final Stream<RequestTuple> stream;
+                    if (check == Expectation.intersection) {
+                        stream = ctx.intersectionExamples(basePolicy, targetPolicy, enumerationOptions);
+                    } else {
+                        stream = ctx.supersetCounterexamples(basePolicy, targetPolicy, enumerationOptions);
+                    }
+                    stream.forEach(example -> System.out.printf("Example : %s\n", example));
+                }
+                return;
+            }
+
+            // the context is created only on cache miss, so cached results don't load Z3
+            ResultCache cache = cacheDir == null ? null : new ResultCache(cacheDir.toPath(), cacheMaxBytes);
+            switch (check) {
+                case intersection:
+                    Supplier<IntersectionResult> intersectionCheck =
+                            () -> check(options,
+                                        ctx -> ctx.intersection(basePolicy, targetPolicy),
+                                        checker -> checker.intersection(basePolicy, targetPolicy));
+                    IntersectionResult intersection =
+                            cache == null
+                            ? intersectionCheck.get()
+                            : cache.intersection(basePolicy, targetPolicy, options, intersectionCheck);
+                    System.out.printf("Result  : %s\n",
+                                      formatResult(intersection.intersects(), intersection.unknownReason()));
+                    System.out.printf("Example : %s\n", intersection.example());
+                    System.out.printf("Engine  : %s\n", intersection.engine());
+                    winner.ifPresent(w -> System.out.printf("Winner  : %s\n", w));
+                    printStats(intersection.stats());
+                    printExplanation(intersection.explanation(), basePolicy, targetPolicy);
+                    break;
+                case supersetOf:
+                    Supplier<SupersetResult> supersetCheck =
+                            () -> check(options,
+                                        ctx -> ctx.supersetOf(basePolicy, targetPolicy),
+                                        checker -> checker.supersetOf(basePolicy, targetPolicy));
+                    SupersetResult supersetResult =
+                            cache == null
+                            ? supersetCheck.get()
+                            : cache.supersetOf(basePolicy, targetPolicy, options, supersetCheck);
+                    System.out.printf("Result          : %s\n",
+                                      formatResult(supersetResult.isSuperset(), supersetResult.unknownReason()));
+                    System.out.printf("Counter Example : %s\n", supersetResult.counterexample());
+                    System.out.printf("Engine          : %s\n", supersetResult.engine());
+                    winner.ifPresent(w -> System.out.printf("Winner          : %s\n", w));
+                    printStats(supersetResult.stats());
+                    printExplanation(supersetResult.explanation(), basePolicy, targetPolicy);
+                    break;
+            }
+        }
+
+        private void validateOptions() {
+            if (examples > 1) {
+                // enumeration runs on a plain context and prints examples only
+                List<String> unsupported = new ArrayList<>();
+                if (cacheDir != null) {
+                    unsupported.add("--cache-dir");
+                }
+                if (stats != null) {
+                    unsupported.add("--stats");
+                }
+                if (explain) {
+                    unsupported.add("--explain");
+                }
+                if (portfolio) {
+                    unsupported.add("--portfolio");
                 }
+                if (!unsupported.isEmpty()) {
+                    throw new ParameterException(
+                            spec.commandLine(),
+                            String.join(", ", unsupported) + " cannot be used with --examples > 1");
+                }
+            } else if (!distinctBy.isEmpty()) {
+                throw new ParameterException(spec.commandLine(), "--distinct-by requires --examples > 1");
+            }
+        }
+
+        private <T> T check(AclCheckOptions options,
+                            Function<AclCheckContext, T> operation,
+                            Function<PortfolioChecker, PortfolioChecker.Outcome<T>> portfolioOperation) {
+            if (portfolio) {
+                try (PortfolioChecker checker = new PortfolioChecker(
+                        PortfolioChecker.defaultConfigurations(options))) {
+                    PortfolioChecker.Outcome<T> outcome = portfolioOperation.apply(checker);
+                    winner = Optional.of(outcome.winner().orElse("none"));
+                    return outcome.result();
+                }
+            }
+            try (AclCheckContext ctx = new AclCheckContext(options)) {
+                return operation.apply(ctx);
+            }
+        }
+
+        private static void printExplanation(Optional<Explanation> explanation,
+                                             AclPolicy basePolicy,
+                                             AclPolicy targetPolicy) {
+            explanation.ifPresent(e -> {
+                System.out.println("Explanation :");
+                for (int i : e.p1Entries()) {
+                    System.out.printf("  base-policy[%d]   : %s\n", i, basePolicy.entries().get(i));
+                }
+                for (int i : e.p2Entries()) {
+                    System.out.printf("  target-policy[%d] : %s\n", i, targetPolicy.entries().get(i));
+                }
+            });
+        }
+
+        private void printStats(Optional<CheckStats> checkStats) throws IOException {
+            if (stats == null || !checkStats.isPresent()) {
+                return;
+            }
+            CheckStats s = checkStats.get();
+            switch (stats) {
+                case human:
+                    System.out.println("Stats   :");
+                    System.out.printf("  encode   : %.3f ms\n", s.encodeNanos() / 1e6);
+                    System.out.printf("  solve    : %.3f ms\n", s.solveNanos() / 1e6);
+                    System.out.printf("  entries  : %d\n", s.entries());
+                    System.out.printf("  ast nodes: %d\n", s.astNodes());
+                    s.solverStatistics().forEach((key, value) -> System.out.printf("  %s: %s\n", key, value));
+                    break;
+                case json:
+                    System.out.println(jsonMapper.writeValueAsString(s));
+                    break;
+            }
+        }
+    }
+
+    @Command(name = "check-suite",
+            description = "Run a suite of expectations in parallel. Exits with 1 if any expectation didn't pass")
+    static class CheckSuite implements Callable<Integer> {
+        @Option(names = "--suite",
+                required = true)
+        private File suiteFile;
+
+        @Option(names = "--parallelism",
+                description = "Number of checks to run concurrently. Defaults to the number of processors")
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        @Option(names = "--junit-xml",
+                description = "Write the JUnit XML report to the file")
+        private File junitXmlFile;
+
+        @Option(names = "--fail-fast",
+                description = "Skip remaining expectations after the first failure")
+        private boolean failFast;
+
+        @Mixin
+        private SolverOptions solverOptions;
+
+        @Override
+        public Integer call() throws IOException {
+            SuiteRunner.Suite suite = mapper.readValue(suiteFile, SuiteRunner.Suite.class);
+            SuiteRunner runner = new SuiteRunner(suite, suiteFile.getAbsoluteFile().toPath().getParent());
+
+            final List<Outcome> outcomes;
+            try (AclCheckContextPool pool = new AclCheckContextPool(
+                    parallelism, solverOptions.toOptions(), Duration.ofSeconds(30))) {
+                // results are streamed as NDJSON in completion order
+                outcomes = runner.run(pool, parallelism, failFast, outcome -> {
+                    ObjectNode node = jsonMapper.createObjectNode();
+                    node.put("name", outcome.name());
+                    node.put("status", outcome.status().name());
+                    node.put("actual", outcome.actual().orElse(null));
+                    node.set("example", outcome.example().<JsonNode>map(jsonMapper::valueToTree).orElse(null));
+                    node.put("message", outcome.message().orElse(null));
+                    node.put("elapsedMillis", outcome.elapsedNanos() / 1_000_000L);
+                    System.out.println(node);
+                });
+            }
+            if (junitXmlFile != null) {
+                SuiteRunner.writeJUnitXml(runner.name(), outcomes, junitXmlFile.toPath());
+            }
+            return outcomes.stream().allMatch(o -> o.status() == Status.passed) ? 0 : 1;
+        }
+    }
+
+    private enum StatsFormat {
+        human,
+        json,
+    }
+
+    @Command(name = "minimize",
+            description = "Remove redundant entries from the policy without changing its semantics")
+    static class Minimize implements IORunnable {
+        @Option(names = "--policy",
+                required = true)
+        private File policyFile;
+
+        @Option(names = "--output",
+                required = true)
+        private File outputFile;
+
+        @Mixin
+        private SolverOptions solverOptions;
+
+        @Override
+        public void runIO() throws IOException {
+            AclPolicy policy = readPolicy(policyFile);
+
+            try (AclCheckContext ctx = new AclCheckContext(solverOptions.toOptions())) {
+                AclPolicy minimized = ctx.minimize(policy);
+                mapper.writeValue(outputFile, minimized);
+                System.out.printf("Entries : %d -> %d\n", policy.entries().size(), minimized.entries().size());
             }
         }
     }
 
+    @Command(name = "diff",
+            description = "Check how the set of allowed requests changes between two versions of the policy")
+    static class Diff implements IORunnable {
+        @Option(names = "--old-policy",
+                required = true)
+        private File oldPolicyFile;
+
+        @Option(names = "--new-policy",
+                required = true)
+        private File newPolicyFile;
+
+        @Mixin
+        private SolverOptions solverOptions;
+
+        @Override
+        public void runIO() throws IOException {
+            AclPolicy oldPolicy = readPolicy(oldPolicyFile);
+            AclPolicy newPolicy = readPolicy(newPolicyFile);
+
+            try (AclCheckContext ctx = new AclCheckContext(solverOptions.toOptions())) {
+                DiffResult result = ctx.diff(oldPolicy, newPolicy);
+                System.out.printf("Added      : %d\n", result.diff().added().size());
+                System.out.printf("Removed    : %d\n", result.diff().removed().size());
+                System.out.printf("Equivalent : %s\n",
+                                  formatResult(result.equivalent(), result.unknownReason()));
+                System.out.printf("Gained     : %s\n", result.gained());
+                System.out.printf("Lost       : %s\n", result.lost());
+            }
+        }
+    }
+
+    @Command(name = "compare",
+            description = "Compare policies of clusters pairwise. Exits with 1 if any pair is not equivalent")
+    static class Compare implements Callable<Integer> {
+        @Option(names = "--policy",
+                required = true,
+                description = "Policy of a cluster as name=file. Can be repeated")
+        private Map<String, File> policyFiles = new LinkedHashMap<>();
+
+        @Option(names = "--reference",
+                description = "Compare each policy only against the policy of this name instead of all pairs")
+        private String reference;
+
+        @Option(names = "--parallelism",
+                description = "Number of checks to run concurrently. Defaults to the number of processors")
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        @Mixin
+        private SolverOptions solverOptions;
+
+        @Override
+        public Integer call() {
+            final List<Comparison> comparisons;
+            try (AclCheckContextPool pool = new AclCheckContextPool(
+                    parallelism, solverOptions.toOptions(), Duration.ofSeconds(30))) {
+                // results are streamed as NDJSON in completion order
+                comparisons = new PolicyComparator(policyFiles).run(
+                        pool, parallelism, Optional.ofNullable(reference), comparison -> {
+                            ObjectNode node = jsonMapper.createObjectNode();
+                            node.put("left", comparison.left());
+                            node.put("right", comparison.right());
+                            node.put("relation", comparison.relation().name());
+                            node.set("onlyLeft", comparison.onlyLeft()
+                                                           .<JsonNode>map(jsonMapper::valueToTree)
+                                                           .orElse(null));
+                            node.set("onlyRight", comparison.onlyRight()
+                                                            .<JsonNode>map(jsonMapper::valueToTree)
+                                                            .orElse(null));
+                            node.put("message", comparison.message().orElse(null));
+                            node.put("elapsedMillis", comparison.elapsedNanos() / 1_000_000L);
+                            System.out.println(node);
+                        });
+            }
+            return comparisons.stream().allMatch(c -> c.relation() == Relation.equivalent) ? 0 : 1;
+        }
+    }
+
+    @Command(name = "replay",
+            description = "Replay request logs against current and proposed policies and report changed decisions")
+    static class Replay implements IORunnable {
+        @Option(names = "--current-policy",
+                required = true)
+        private File currentPolicyFile;
+
+        @Option(names = "--proposed-policy",
+                required = true)
+        private File proposedPolicyFile;
+
+        @Option(names = "--requests",
+                required = true,
+                description = "Request log file. Each line is a request-tuple in CSV or JSON")
+        private File requestsFile;
+
+        @Option(names = "--format",
+                description = "One of ${COMPLETION-CANDIDATES}. Defaults to csv for .csv files, ndjson otherwise")
+        private Replayer.Format format;
+
+        @Option(names = "--parallelism",
+                description = "Number of threads. Defaults to the number of processors")
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        @Option(names = "--top",
+                defaultValue = "100",
+                description = "Max number of changed request groups to print")
+        private int top;
+
+        @Override
+        public void runIO() throws IOException {
+            AclPolicy currentPolicy = readPolicy(currentPolicyFile);
+            AclPolicy proposedPolicy = readPolicy(proposedPolicyFile);
+            Replayer.Format logFormat = format;
+            if (logFormat == null) {
+                logFormat = requestsFile.getName().endsWith(".csv") ? Replayer.Format.csv : Replayer.Format.ndjson;
+            }
+
+            Report report = new Replayer(currentPolicy, proposedPolicy, logFormat, parallelism)
+                    .replay(requestsFile.toPath());
+            System.out.printf("Total           : %d\n", report.total);
+            System.out.printf("Errors          : %d\n", report.errors);
+            System.out.printf("Allowed by both : %d\n", report.allowedByBoth);
+            System.out.printf("Denied by both  : %d\n", report.deniedByBoth);
+            System.out.printf("Newly allowed   : %d\n", report.newlyAllowed);
+            System.out.printf("Newly denied    : %d\n", report.newlyDenied);
+            if (report.differences.isEmpty()) {
+                return;
+            }
+            System.out.printf("Changes (top %d of %d):\n", Math.min(top, report.differences.size()),
+                              report.differences.size());
+            report.differences
+                    .entrySet()
+                    .stream()
+                    .sorted(Map.Entry.<DiffKey, Long>comparingByValue(Comparator.reverseOrder()))
+                    .limit(top)
+                    .forEach(e -> {
+                        DiffKey key = e.getKey();
+                        System.out.printf("  %-12s %10d  %s %s %s:%s\n",
+                                          key.change(), e.getValue(), AclPolicy.USER_PREFIX + key.userPrincipal(),
+                                          key.operation(), key.resourceType(), key.resourceName());
+                    });
+        }
+    }
+
+    @Command(name = "serve",
+            description = "Serve checks over HTTP with warm solver contexts")
+    static class Serve implements IORunnable {
+        @Option(names = "--host",
+                defaultValue = "127.0.0.1")
+        private String host;
+
+        @Option(names = "--port",
+                defaultValue = "8787")
+        private int port;
+
+        @Option(names = "--pool-size",
+                description = "Number of solver contexts. Defaults to the number of processors")
+        private int poolSize = Runtime.getRuntime().availableProcessors();
+
+        @Option(names = "--policy-cache-size",
+                defaultValue = "64",
+                description = "Max number of parsed policies to be cached")
+        private int policyCacheSize;
+
+        @Option(names = "--max-request-size",
+                defaultValue = "16777216",
+                description = "Max size of a request body in bytes")
+        private int maxRequestBytes;
+
+        @Option(names = "--policy-dir",
+                description = "Directory which basePolicyFile and targetPolicyFile are resolved against. "
+                              + "Policy files are not allowed if not specified")
+        private File policyDir;
+
+        @Mixin
+        private SolverOptions solverOptions;
+
+        @Override
+        public void runIO() throws IOException {
+            AclCheckContextPool pool = new AclCheckContextPool(
+                    poolSize, solverOptions.toOptions(), Duration.ofSeconds(30));
+            CheckServer server = new CheckServer(
+                    jsonMapper, pool, new InetSocketAddress(host, port), poolSize, policyCacheSize, maxRequestBytes,
+                    Optional.ofNullable(policyDir).map(File::toPath));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                pool.close();
+            }));
+            server.start();
+            System.out.printf("Listening on %s\n", server.address());
+            try {
+                Thread.currentThread().join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Writes policy entries incrementally to keep memory usage flat.
+     */
+    interface EntryWriter extends Closeable {
+        void write(Entry entry) throws IOException;
+    }
+
+    static EntryWriter yamlWriter(File file) throws IOException {
+        JsonGenerator generator = mapper.getFactory().createGenerator(file, JsonEncoding.UTF8);
+        ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        generator.writeStartObject();
+        generator.writeFieldName("entries");
+        generator.writeStartArray();
+        return new EntryWriter() {
+            @Override
+            public void write(Entry entry) throws IOException {
+                writer.writeValue(generator, entry);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    generator.writeEndArray();
+                    generator.writeEndObject();
+                } finally {
+                    generator.close();
+                }
+            }
+        };
+    }
+
+    static EntryWriter binaryWriter(File file) throws IOException {
+        AclPolicySnapshot.Writer writer = new AclPolicySnapshot.Writer(new FileOutputStream(file));
+        return new EntryWriter() {
+            @Override
+            public void write(Entry entry) throws IOException {
+                writer.write(entry);
+            }
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+
+    /**
+     * Reads the policy file either in YAML or in binary snapshot format.
+     */
+    static AclPolicy readPolicy(File file) throws IOException {
+        if (AclPolicySnapshot.isSnapshot(file.toPath())) {
+            return AclPolicySnapshot.read(file.toPath());
+        }
+        return mapper.readValue(file, AclPolicy.class);
+    }
+
+    static class SolverOptions {
+        @Option(names = "--timeout",
+                description = "Solver timeout per check in milliseconds. 0 means no timeout")
+        private int timeoutMillis;
+
+        @Option(names = "--rlimit",
+                description = "Solver resource limit per check. 0 means unlimited")
+        private int resourceLimit;
+
+        @Option(names = "--solver-profile",
+                defaultValue = "seq",
+                description = "One of ${COMPLETION-CANDIDATES}")
+        private SolverProfile profile;
+
+        @Option(names = "--tactic",
+                description = "Z3 tactic to build the solver from. Can be repeated to chain tactics")
+        private List<String> tactics = new ArrayList<>();
+
+        @Option(names = "--finite-domain",
+                description = "Encode fields compared only with literals over finite domains")
+        private boolean finiteDomain;
+
+        @Option(names = "--regex",
+                description = "Encode multi-valued prefix/suffix/substring conditions as a single regex")
+        private boolean regex;
+
+        @Option(names = "--symmetry-reduction",
+                description = "Collapse literals which no condition can tell apart before solving")
+        private boolean symmetryReduction;
+
+        AclCheckOptions toOptions() {
+            AclCheckOptions.AclCheckOptionsBuilder builder =
+                    AclCheckOptions.builder()
+                                   .timeoutMillis(timeoutMillis)
+                                   .resourceLimit(resourceLimit)
+                                   .finiteDomainEncoding(finiteDomain)
+                                   .regexEncoding(regex)
+                                   .symmetryReduction(symmetryReduction);
+            switch (profile) {
+                case seq:
+                    builder.stringSolver(StringSolver.Seq);
+                    break;
+                case z3str3:
+                    builder.stringSolver(StringSolver.Z3Str3);
+                    break;
+                case preprocess:
+                    builder.tactics(Arrays.asList("simplify", "propagate-values", "solve-eqs", "smt"));
+                    break;
+            }
+            if (!tactics.isEmpty()) {
+                builder.tactics(tactics);
+            }
+            return builder.build();
+        }
+    }
+
+    private enum SolverProfile {
+        seq,
+        z3str3,
+        preprocess,
+    }
+
+    private static String formatResult(boolean result, Optional<String> unknownReason) {
+        return unknownReason.map(reason -> "unknown (" + reason + ')')
+                            .orElseGet(() -> String.valueOf(result));
+    }
+
     @FunctionalInterface
     private interface IORunnable extends Runnable {
         void runIO() throws IOException;
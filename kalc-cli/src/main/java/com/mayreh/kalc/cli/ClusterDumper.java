@@ -0,0 +1,291 @@
+package com.mayreh.kalc.cli;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.DescribeAclsOptions;
+import org.apache.kafka.common.acl.AccessControlEntryFilter;
+import org.apache.kafka.common.acl.AclBinding;
+import org.apache.kafka.common.acl.AclBindingFilter;
+import org.apache.kafka.common.resource.PatternType;
+import org.apache.kafka.common.resource.ResourcePatternFilter;
+import org.apache.kafka.common.resource.ResourceType;
+
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.Utils;
+import com.mayreh.kalc.cli.Cli.Dump.Format;
+import com.mayreh.kalc.cli.Cli.EntryWriter;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Dumps ACLs of many clusters concurrently, writing one policy file per cluster.
+ *
+ * Each cluster is dumped within the timeout and retried on I/O errors and failed or timed out admin calls.
+ * Other errors such as invalid client configs or unsupported ACLs are deterministic so they are not retried.
+ * Policy files are written to a temporary file first and moved on success,
+ * so a failed attempt never leaves a partial policy behind.
+ */
+class ClusterDumper {
+    /**
+     * Clusters file format.
+     * commandConfig is a path to the client properties file relative to the clusters file.
+     */
+    static class Clusters {
+        private List<Cluster> clusters = new ArrayList<>();
+    }
+
+    static class Cluster {
+        private String name;
+        private String bootstrapServers;
+        private String commandConfig;
+        private Map<String, String> properties = new LinkedHashMap<>();
+    }
+
+    @Value
+    @Builder
+    @Accessors(fluent = true)
+    static class Outcome {
+        int index;
+
+        @NonNull
+        String name;
+
+        boolean succeeded;
+
+        int attempts;
+
+        long entries;
+
+        /**
+         * Written policy file. Absent if the dump failed
+         */
+        @NonNull
+        @Builder.Default
+        Optional<Path> output = Optional.empty();
+
+        @NonNull
+        @Builder.Default
+        Optional<String> message = Optional.empty();
+
+        long elapsedNanos;
+    }
+
+    private final Clusters clusters;
+    private final Path baseDir;
+    private final Path outputDir;
+    private final Format format;
+    private final Duration timeout;
+    private final int retries;
+    private final Duration retryBackoff;
+
+    ClusterDumper(Clusters clusters,
+                  Path baseDir,
+                  Path outputDir,
+                  Format format,
+                  Duration timeout,
+                  int retries,
+                  Duration retryBackoff) {
+        this.clusters = clusters;
+        this.baseDir = baseDir;
+        this.outputDir = outputDir;
+        this.format = format;
+        this.timeout = timeout;
+        this.retries = retries;
+        this.retryBackoff = retryBackoff;
+    }
+
+    /**
+     * Dump all clusters with the given parallelism.
+     * Outcomes are passed to the listener in completion order.
+     *
+     * @return outcomes in the order of the clusters in the file
+     * @throws IllegalArgumentException if cluster names are not usable as distinct file names
+     */
+    List<Outcome> run(int parallelism, Consumer<Outcome> listener) throws IOException {
+        List<String> names = names();
+        Files.createDirectories(outputDir);
+        ExecutorService executor = Utils.daemonThreadPool("kalc-dump", parallelism);
+        try {
+            CompletionService<Outcome> completionService = new ExecutorCompletionService<>(executor);
+            for (int i = 0; i < clusters.clusters.size(); i++) {
+                int index = i;
+                completionService.submit(() -> dump(index, names.get(index)));
+            }
+
+            List<Outcome> outcomes = new ArrayList<>();
+            for (int i = 0; i < clusters.clusters.size(); i++) {
+                Outcome outcome = completionService.take().get();
+                outcomes.add(outcome);
+                listener.accept(outcome);
+            }
+            outcomes.sort(Comparator.comparingInt(Outcome::index));
+            return outcomes;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Names of the clusters, which are used as the file names in the output directory.
+     * Validated up front so that no cluster can write outside of the directory or overwrite another's policy.
+     */
+    private List<String> names() {
+        List<String> names = new ArrayList<>(clusters.clusters.size());
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < clusters.clusters.size(); i++) {
+            Cluster cluster = clusters.clusters.get(i);
+            String name = cluster.name != null ? cluster.name : "cluster-" + i;
+            if (name.isEmpty() || name.indexOf('/') >= 0 || name.indexOf('\\') >= 0 || name.indexOf('\0') >= 0) {
+                throw new IllegalArgumentException("Invalid cluster name: " + name);
+            }
+            if (!seen.add(name)) {
+                throw new IllegalArgumentException("Duplicate cluster name: " + name);
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    private Outcome dump(int index, String name) throws InterruptedException {
+        Cluster cluster = clusters.clusters.get(index);
+        Outcome.OutcomeBuilder builder = Outcome.builder().index(index).name(name);
+        long start = System.nanoTime();
+        if (cluster.bootstrapServers == null) {
+            return builder.succeeded(false)
+                          .message(Optional.of("bootstrapServers is required"))
+                          .build();
+        }
+
+        Path output = outputDir.resolve(name + (format == Format.binary ? ".kalc" : ".yml"));
+        int attempts = 0;
+        while (true) {
+            attempts++;
+            try {
+                long entries = dumpOnce(cluster, output);
+                builder.succeeded(true).entries(entries).output(Optional.of(output));
+                break;
+            } catch (RuntimeException e) {
+                builder.succeeded(false).message(Optional.of(String.valueOf(e)));
+                break;
+            } catch (IOException | ExecutionException | TimeoutException e) {
+                Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                if (attempts > retries) {
+                    builder.succeeded(false).message(Optional.of(String.valueOf(cause)));
+                    break;
+                }
+                // linear backoff is enough as the number of retries is small
+                Thread.sleep(retryBackoff.toMillis() * attempts);
+            }
+        }
+        return builder.attempts(attempts).elapsedNanos(System.nanoTime() - start).build();
+    }
+
+    private long dumpOnce(Cluster cluster, Path output)
+            throws IOException, ExecutionException, TimeoutException, InterruptedException {
+        Properties commandConfig = new Properties();
+        if (cluster.commandConfig != null) {
+            try (FileInputStream is = new FileInputStream(baseDir.resolve(cluster.commandConfig).toFile())) {
+                commandConfig.load(is);
+            }
+        }
+        commandConfig.putAll(cluster.properties);
+
+        Path tmp = Files.createTempFile(outputDir, output.getFileName().toString(), ".tmp");
+        try {
+            long entries;
+            try (Admin admin = Admin.create(adminProperties(cluster.bootstrapServers, commandConfig));
+                 EntryWriter writer = format == Format.binary
+                                      ? Cli.binaryWriter(tmp.toFile())
+                                      : Cli.yamlWriter(tmp.toFile())) {
+                entries = dumpAcls(admin, writer, timeout);
+            }
+            Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return entries;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static Properties adminProperties(String bootstrapServers, Properties commandConfig) {
+        Properties props = new Properties();
+        props.setProperty(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.setProperty(AdminClientConfig.CLIENT_ID_CONFIG, "kalc-admin-client");
+        props.putAll(commandConfig);
+        return props;
+    }
+
+    /**
+     * Describe all ACLs in the cluster and write them to the writer.
+     * Describe is done per resource type and pattern type so that only a part of ACLs are held at a time.
+     *
+     * @param timeout the time limit for whole describe calls. {@link Duration#ZERO} means no limit
+     * @return the number of written entries
+     */
+    static long dumpAcls(Admin admin, EntryWriter writer, Duration timeout)
+            throws IOException, ExecutionException, TimeoutException, InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long entries = 0;
+        for (ResourceType resourceType : ResourceType.values()) {
+            if (resourceType == ResourceType.ANY || resourceType == ResourceType.UNKNOWN) {
+                continue;
+            }
+            for (PatternType patternType : Arrays.asList(PatternType.LITERAL, PatternType.PREFIXED)) {
+                AclBindingFilter filter = new AclBindingFilter(
+                        new ResourcePatternFilter(resourceType, null, patternType),
+                        AccessControlEntryFilter.ANY);
+                final Iterable<AclBinding> bindings;
+                if (timeout.isZero()) {
+                    bindings = admin.describeAcls(filter).values().get();
+                } else {
+                    long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        throw new TimeoutException("Timed out after " + timeout.toMillis() + " ms");
+                    }
+                    bindings = admin.describeAcls(
+                                            filter,
+                                            new DescribeAclsOptions().timeoutMs(
+                                                    (int) Math.min(remainingMillis, Integer.MAX_VALUE)))
+                                    .values()
+                                    .get(remainingMillis, TimeUnit.MILLISECONDS);
+                }
+                for (AclBinding binding : bindings) {
+                    writer.write(Entry.fromAclBinding(binding));
+                    entries++;
+                }
+            }
+        }
+        return entries;
+    }
+}
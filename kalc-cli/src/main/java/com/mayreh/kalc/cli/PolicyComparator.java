@@ -0,0 +1,199 @@
+package com.mayreh.kalc.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.AclCheckContextPool;
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.RequestTuple;
+import com.mayreh.kalc.Utils;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Compares policies of clusters pairwise to find drift between clusters which should mirror each other.
+ *
+ * Each pair is checked by supersetOf in both directions, and every direction runs concurrently
+ * on {@link AclCheckContextPool}. Policies are parsed once and concurrently as well.
+ */
+class PolicyComparator {
+    enum Relation {
+        equivalent,
+        // left allows every request allowed by right, but not vice versa
+        leftSuperset,
+        // right allows every request allowed by left, but not vice versa
+        rightSuperset,
+        diverged,
+        unknown,
+    }
+
+    @Value
+    @Builder
+    @Accessors(fluent = true)
+    static class Comparison {
+        @NonNull
+        String left;
+
+        @NonNull
+        String right;
+
+        @NonNull
+        Relation relation;
+
+        /**
+         * Request allowed only by left
+         */
+        @NonNull
+        @Builder.Default
+        Optional<RequestTuple> onlyLeft = Optional.empty();
+
+        /**
+         * Request allowed only by right
+         */
+        @NonNull
+        @Builder.Default
+        Optional<RequestTuple> onlyRight = Optional.empty();
+
+        @NonNull
+        @Builder.Default
+        Optional<String> message = Optional.empty();
+
+        long elapsedNanos;
+    }
+
+    private final Map<String, File> policyFiles;
+
+    /**
+     * @param policyFiles policy files keyed by the cluster name
+     */
+    PolicyComparator(Map<String, File> policyFiles) {
+        this.policyFiles = policyFiles;
+    }
+
+    /**
+     * Compare pairs of policies.
+     * Comparisons are passed to the listener in completion order.
+     *
+     * @param reference if present, each policy is compared only against the reference instead of all pairs
+     * @return comparisons ordered by the pair
+     */
+    List<Comparison> run(AclCheckContextPool pool,
+                         int parallelism,
+                         Optional<String> reference,
+                         Consumer<Comparison> listener) {
+        if (reference.isPresent() && !policyFiles.containsKey(reference.get())) {
+            throw new IllegalArgumentException("Unknown reference: " + reference.get());
+        }
+        List<String> names = new ArrayList<>(policyFiles.keySet());
+        List<String[]> pairs = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            for (int j = i + 1; j < names.size(); j++) {
+                if (!reference.isPresent()
+                    || reference.get().equals(names.get(i))
+                    || reference.get().equals(names.get(j))) {
+                    pairs.add(new String[] { names.get(i), names.get(j) });
+                }
+            }
+        }
+
+        ExecutorService executor = Utils.daemonThreadPool("kalc-compare", parallelism);
+        try {
+            Map<String, CompletableFuture<AclPolicy>> policies = new LinkedHashMap<>();
+            for (Map.Entry<String, File> entry : policyFiles.entrySet()) {
+                policies.put(entry.getKey(),
+                             CompletableFuture.supplyAsync(() -> readPolicy(entry.getValue()), executor));
+            }
+
+            List<CompletableFuture<Comparison>> futures = new ArrayList<>();
+            for (String[] pair : pairs) {
+                futures.add(compare(pool, executor, pair[0], pair[1], policies)
+                                    .thenApply(comparison -> {
+                                        synchronized (listener) {
+                                            listener.accept(comparison);
+                                        }
+                                        return comparison;
+                                    }));
+            }
+
+            List<Comparison> comparisons = new ArrayList<>();
+            for (CompletableFuture<Comparison> future : futures) {
+                comparisons.add(future.join());
+            }
+            comparisons.sort(Comparator.comparing(Comparison::left).thenComparing(Comparison::right));
+            return comparisons;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CompletableFuture<Comparison> compare(AclCheckContextPool pool,
+                                                         ExecutorService executor,
+                                                         String left,
+                                                         String right,
+                                                         Map<String, CompletableFuture<AclPolicy>> policies) {
+        CompletableFuture<AclPolicy> leftPolicy = policies.get(left);
+        CompletableFuture<AclPolicy> rightPolicy = policies.get(right);
+        long start = System.nanoTime();
+
+        // both directions are submitted separately so that they can run on different contexts
+        CompletableFuture<SupersetResult> leftCoversRight = leftPolicy.thenCombineAsync(
+                rightPolicy, pool::supersetOf, executor);
+        CompletableFuture<SupersetResult> rightCoversLeft = rightPolicy.thenCombineAsync(
+                leftPolicy, pool::supersetOf, executor);
+
+        return leftCoversRight.thenCombine(rightCoversLeft, (l, r) -> {
+            Comparison.ComparisonBuilder builder =
+                    Comparison.builder()
+                              .left(left)
+                              .right(right)
+                              .onlyLeft(r.counterexample())
+                              .onlyRight(l.counterexample());
+            if (l.unknownReason().isPresent() || r.unknownReason().isPresent()) {
+                builder.relation(Relation.unknown)
+                       .message(Optional.of("unknown (" + l.unknownReason()
+                                                          .orElseGet(() -> r.unknownReason().get()) + ')'));
+            } else if (l.isSuperset() && r.isSuperset()) {
+                builder.relation(Relation.equivalent);
+            } else if (l.isSuperset()) {
+                builder.relation(Relation.leftSuperset);
+            } else if (r.isSuperset()) {
+                builder.relation(Relation.rightSuperset);
+            } else {
+                builder.relation(Relation.diverged);
+            }
+            return builder.elapsedNanos(System.nanoTime() - start).build();
+        }).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            return Comparison.builder()
+                             .left(left)
+                             .right(right)
+                             .relation(Relation.unknown)
+                             .message(Optional.of(String.valueOf(cause)))
+                             .elapsedNanos(System.nanoTime() - start)
+                             .build();
+        });
+    }
+
+    private static AclPolicy readPolicy(File file) {
+        try {
+            return Cli.readPolicy(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package com.mayreh.kalc.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.RequestTuple;
+import com.mayreh.kalc.Utils;
+
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Replays request logs against the current and the proposed policies and aggregates
+ * the request-tuples whose decision changes.
+ *
+ * The log file is split into chunks on line boundaries, and each chunk is memory-mapped,
+ * parsed and evaluated in parallel. Requests are evaluated by {@link AclPolicy#authorizes(RequestTuple)}
+ * so the solver is not involved.
+ *
+ * Each line is a request-tuple either in CSV (userPrincipal,host,operation,resourceType,resourceName)
+ * or in JSON object with the same field names. CSV fields may be quoted to contain commas.
+ * Empty lines and lines starting with # are ignored.
+ * Principals are logged in Kafka's form (e.g. User:foo) and the prefix is stripped as policies do.
+ * Lines with other principal types or with unknown operations or resource types are counted as errors.
+ */
+final class Replayer {
+    private static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    enum Format {
+        csv,
+        ndjson,
+    }
+
+    enum Change {
+        newlyAllowed,
+        newlyDenied,
+    }
+
+    /**
+     * Request-tuples are aggregated by this key, ignoring the host.
+     */
+    @Value
+    @Accessors(fluent = true)
+    static class DiffKey {
+        Change change;
+        String userPrincipal;
+        AclOperation operation;
+        ResourceType resourceType;
+        String resourceName;
+    }
+
+    static final class Report {
+        long total;
+        long errors;
+        long allowedByBoth;
+        long deniedByBoth;
+        long newlyAllowed;
+        long newlyDenied;
+        final Map<DiffKey, Long> differences = new HashMap<>();
+
+        private void record(RequestTuple request, boolean current, boolean proposed) {
+            total++;
+            if (current == proposed) {
+                if (current) {
+                    allowedByBoth++;
+                } else {
+                    deniedByBoth++;
+                }
+                return;
+            }
+            Change change = proposed ? Change.newlyAllowed : Change.newlyDenied;
+            if (proposed) {
+                newlyAllowed++;
+            } else {
+                newlyDenied++;
+            }
+            differences.merge(new DiffKey(change,
+                                          request.userPrincipal(),
+                                          request.operation(),
+                                          request.resourceType(),
+                                          request.resourceName()),
+                              1L, Long::sum);
+        }
+
+        private void merge(Report other) {
+            total += other.total;
+            errors += other.errors;
+            allowedByBoth += other.allowedByBoth;
+            deniedByBoth += other.deniedByBoth;
+            newlyAllowed += other.newlyAllowed;
+            newlyDenied += other.newlyDenied;
+            other.differences.forEach((key, count) -> differences.merge(key, count, Long::sum));
+        }
+    }
+
+    private final AclPolicy current;
+    private final AclPolicy proposed;
+    private final Format format;
+    private final int parallelism;
+    private final long chunkSize;
+
+    Replayer(AclPolicy current, AclPolicy proposed, Format format, int parallelism) {
+        this(current, proposed, format, parallelism, DEFAULT_CHUNK_SIZE);
+    }
+
+    Replayer(AclPolicy current, AclPolicy proposed, Format format, int parallelism, long chunkSize) {
+        this.current = current;
+        this.proposed = proposed;
+        this.format = format;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+    }
+
+    Report replay(Path file) throws IOException {
+        // compile indexes before sharing policies across threads
+        current.index();
+        proposed.index();
+
+        ExecutorService executor = Utils.daemonThreadPool("kalc-replay", parallelism);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Future<Report>> futures = new ArrayList<>();
+            for (long[] chunk : split(channel)) {
+                futures.add(executor.submit(() -> replay(channel, chunk[0], chunk[1])));
+            }
+            Report report = new Report();
+            for (Future<Report> future : futures) {
+                report.merge(future.get());
+            }
+            return report;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Split the file into chunks of about chunkSize, each of which ends at the line boundary.
+     */
+    private List<long[]> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + chunkSize);
+            while (end < size) {
+                probe.clear();
+                int n = channel.read(probe, end);
+                if (n <= 0) {
+                    end = size;
+                    break;
+                }
+                int newline = -1;
+                for (int i = 0; i < n; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    end += newline + 1;
+                    break;
+                }
+                end += n;
+            }
+            chunks.add(new long[] { start, end });
+            start = end;
+        }
+        return chunks;
+    }
+
+    private Report replay(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+        LineParser parser = format == Format.csv ? new CsvParser() : new JsonLineParser();
+        Report report = new Report();
+
+        int limit = buffer.limit();
+        int lineStart = 0;
+        for (int i = 0; i <= limit; i++) {
+            if (i < limit && buffer.get(i) != '\n') {
+                continue;
+            }
+            int lineEnd = i;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (lineEnd > lineStart && buffer.get(lineStart) != '#') {
+                try {
+                    RequestTuple request = parser.parse(buffer, lineStart, lineEnd);
+                    report.record(request, current.authorizes(request), proposed.authorizes(request));
+                } catch (RuntimeException e) {
+                    report.errors++;
+                }
+            }
+            lineStart = i + 1;
+        }
+        return report;
+    }
+
+    private abstract static class LineParser {
+        private final StringCache strings = new StringCache();
+
+        /**
+         * Parse the line in [from, to) of the buffer.
+         *
+         * @throws RuntimeException if the line is malformed
+         */
+        abstract RequestTuple parse(ByteBuffer buffer, int from, int to);
+
+        String string(ByteBuffer buffer, int from, int to) {
+            return strings.get(buffer, from, to);
+        }
+
+        static RequestTuple build(String userPrincipal,
+                                  String host,
+                                  String operation,
+                                  String resourceType,
+                                  String resourceName) {
+            if (userPrincipal == null || host == null || operation == null ||
+                resourceType == null || resourceName == null) {
+                throw new IllegalArgumentException("Missing field");
+            }
+            if (!userPrincipal.startsWith(AclPolicy.USER_PREFIX)) {
+                throw new IllegalArgumentException("Only user principal is supported: " + userPrincipal);
+            }
+            AclOperation aclOperation = AclOperation.fromString(operation);
+            if (aclOperation == AclOperation.UNKNOWN || aclOperation == AclOperation.ANY ||
+                aclOperation == AclOperation.ALL) {
+                throw new IllegalArgumentException("Invalid operation: " + operation);
+            }
+            ResourceType type = ResourceType.fromString(resourceType);
+            if (type == ResourceType.UNKNOWN || type == ResourceType.ANY) {
+                throw new IllegalArgumentException("Invalid resource type: " + resourceType);
+            }
+            return new RequestTuple(userPrincipal.substring(AclPolicy.USER_PREFIX.length()),
+                                    host,
+                                    aclOperation,
+                                    type,
+                                    resourceName);
+        }
+    }
+
+    /**
+     * Parses userPrincipal,host,operation,resourceType,resourceName.
+     * Fields may be quoted with double quotes (with "" for a quote) to contain commas,
+     * e.g. SSL principals like "User:CN=app,OU=team".
+     * Resource name is the last field so it may contain commas even if not quoted.
+     */
+    private static final class CsvParser extends LineParser {
+        private final String[] values = new String[5];
+        private ByteBuffer buffer;
+        private int pos;
+        private int end;
+
+        @Override
+        RequestTuple parse(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            pos = from;
+            end = to;
+            for (int i = 0; i < values.length; i++) {
+                boolean last = i == values.length - 1;
+                if (pos < end && buffer.get(pos) == '"') {
+                    values[i] = quoted();
+                    boolean terminated = last ? pos == end : pos < end && buffer.get(pos) == ',';
+                    if (!terminated) {
+                        throw new IllegalArgumentException("Unexpected character after quoted field");
+                    }
+                } else {
+                    int start = pos;
+                    while (pos < end && (last || buffer.get(pos) != ',')) {
+                        pos++;
+                    }
+                    if (!last && pos >= end) {
+                        throw new IllegalArgumentException("Expected 5 fields");
+                    }
+                    values[i] = string(buffer, start, pos);
+                }
+                pos++;
+            }
+            return build(values[0], values[1], values[2], values[3], values[4]);
+        }
+
+        /**
+         * Read the quoted field at the position and leaves the position right after the closing quote.
+         */
+        private String quoted() {
+            int start = ++pos;
+            while (pos < end && buffer.get(pos) != '"') {
+                pos++;
+            }
+            if (pos >= end) {
+                throw new IllegalArgumentException("Unterminated quoted field");
+            }
+            if (pos + 1 >= end || buffer.get(pos + 1) != '"') {
+                return string(buffer, start, pos++);
+            }
+            // slow path for fields containing escaped quotes
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (pos = start; ; pos++) {
+                if (pos >= end) {
+                    throw new IllegalArgumentException("Unterminated quoted field");
+                }
+                byte b = buffer.get(pos);
+                if (b == '"') {
+                    pos++;
+                    if (pos >= end || buffer.get(pos) != '"') {
+                        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+                    }
+                }
+                bytes.write(b);
+            }
+        }
+    }
+
+    /**
+     * Parses a flat JSON object per line.
+     * Fields other than the request-tuple fields are skipped.
+     */
+    private static final class JsonLineParser extends LineParser {
+        private static final String[] FIELDS = {
+                "userPrincipal", "host", "operation", "resourceType", "resourceName"
+        };
+        private final String[] values = new String[FIELDS.length];
+        private ByteBuffer buffer;
+        private int pos;
+        private int end;
+
+        @Override
+        RequestTuple parse(ByteBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            pos = from;
+            end = to;
+            for (int i = 0; i < values.length; i++) {
+                values[i] = null;
+            }
+
+            expect('{');
+            skipWhitespace();
+            if (peek() != '}') {
+                while (true) {
+                    skipWhitespace();
+                    int field = field();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    if (peek() == '"') {
+                        String value = string();
+                        if (field >= 0) {
+                            values[field] = value;
+                        }
+                    } else {
+                        skipScalar();
+                    }
+                    skipWhitespace();
+                    if (peek() == ',') {
+                        pos++;
+                        continue;
+                    }
+                    break;
+                }
+            }
+            expect('}');
+            return build(values[0], values[1], values[2], values[3], values[4]);
+        }
+
+        /**
+         * Read the field name and returns its index in FIELDS, or -1 if it's not a request-tuple field.
+         */
+        private int field() {
+            expect('"');
+            int start = pos;
+            while (peek() != '"') {
+                pos++;
+            }
+            int length = pos - start;
+            pos++;
+            for (int i = 0; i < FIELDS.length; i++) {
+                if (asciiEquals(FIELDS[i], buffer, start, length)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String string() {
+            expect('"');
+            int start = pos;
+            while (true) {
+                byte b = peek();
+                if (b == '"') {
+                    String value = string(buffer, start, pos);
+                    pos++;
+                    return value;
+                }
+                if (b == '\\') {
+                    pos = start;
+                    return escapedString();
+                }
+                pos++;
+            }
+        }
+
+        /**
+         * Slow path for strings containing escape sequences.
+         */
+        private String escapedString() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                byte b = peek();
+                pos++;
+                if (b == '"') {
+                    sb.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+                    return sb.toString();
+                }
+                if (b != '\\') {
+                    bytes.write(b);
+                    continue;
+                }
+                sb.append(new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+                bytes.reset();
+                byte escaped = peek();
+                pos++;
+                switch (escaped) {
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < hex.length; i++) {
+                            hex[i] = (char) peek();
+                            pos++;
+                        }
+                        sb.append((char) Integer.parseInt(new String(hex), 16));
+                        break;
+                    default:
+                        sb.append((char) escaped);
+                        break;
+                }
+            }
+        }
+
+        private void skipScalar() {
+            while (pos < end && peek() != ',' && peek() != '}') {
+                pos++;
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < end) {
+                byte b = buffer.get(pos);
+                if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                    return;
+                }
+                pos++;
+            }
+        }
+
+        private byte peek() {
+            if (pos >= end) {
+                throw new IllegalArgumentException("Unexpected end of line");
+            }
+            return buffer.get(pos);
+        }
+
+        private void expect(char c) {
+            if (peek() != c) {
+                throw new IllegalArgumentException("Expected " + c + " at " + pos);
+            }
+            pos++;
+        }
+    }
+
+    /**
+     * Decodes strings in the buffer, reusing the instance decoded last time for the same bytes.
+     * Since principals, hosts, operations and resource types repeat heavily in request logs,
+     * this avoids most of the allocation.
+     */
+    private static final class StringCache {
+        private final String[] slots = new String[4096];
+
+        String get(ByteBuffer buffer, int from, int to) {
+            int hash = 0;
+            boolean ascii = true;
+            for (int i = from; i < to; i++) {
+                byte b = buffer.get(i);
+                hash = 31 * hash + b;
+                ascii &= b >= 0;
+            }
+            if (!ascii) {
+                byte[] bytes = new byte[to - from];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = buffer.get(from + i);
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            int slot = (hash ^ (hash >>> 16)) & (slots.length - 1);
+            String cached = slots[slot];
+            if (cached != null && asciiEquals(cached, buffer, from, to - from)) {
+                return cached;
+            }
+            char[] chars = new char[to - from];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) buffer.get(from + i);
+            }
+            String str = new String(chars);
+            slots[slot] = str;
+            return str;
+        }
+    }
+
+    private static boolean asciiEquals(String str, ByteBuffer buffer, int from, int length) {
+        if (str.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (str.charAt(i) != buffer.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,349 @@
+package com.mayreh.kalc.cli;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.mayreh.kalc.AclCheckContext;
+import com.mayreh.kalc.AclCheckContext.IntersectionResult;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.AclCheckContextPool;
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.RequestTuple;
+import com.mayreh.kalc.Utils;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Runs a suite of expectations on {@link AclCheckContextPool}.
+ *
+ * Each policy file referenced by the suite is parsed only once, and checks are
+ * fanned out to worker threads as soon as their policies are parsed.
+ */
+class SuiteRunner {
+    /**
+     * Suite file format.
+     * base / target of expectations are either names in policies or paths relative to the suite file.
+     */
+    static class Suite {
+        private String name = "kalc";
+        private Map<String, String> policies = new LinkedHashMap<>();
+        private List<Expectation> expectations = new ArrayList<>();
+    }
+
+    static class Expectation {
+        private String name;
+        private String base;
+        private String target;
+        private CheckType check;
+        private boolean expect = true;
+    }
+
+    enum CheckType {
+        intersection,
+        supersetOf,
+    }
+
+    enum Status {
+        passed,
+        failed,
+        error,
+        skipped,
+    }
+
+    @Value
+    @Builder
+    @Accessors(fluent = true)
+    static class Outcome {
+        int index;
+
+        @NonNull
+        String name;
+
+        @NonNull
+        Status status;
+
+        /**
+         * Actual result of the check. Absent if the check didn't complete or the result is unknown
+         */
+        @NonNull
+        @Builder.Default
+        Optional<Boolean> actual = Optional.empty();
+
+        /**
+         * Example of intersection or counterexample of superset
+         */
+        @NonNull
+        @Builder.Default
+        Optional<RequestTuple> example = Optional.empty();
+
+        @NonNull
+        @Builder.Default
+        Optional<String> message = Optional.empty();
+
+        long elapsedNanos;
+    }
+
+    private final Suite suite;
+    private final Path baseDir;
+
+    SuiteRunner(Suite suite, Path baseDir) {
+        this.suite = suite;
+        this.baseDir = baseDir;
+    }
+
+    String name() {
+        return suite.name;
+    }
+
+    /**
+     * Run all expectations with the given parallelism.
+     * Outcomes are passed to the listener in completion order.
+     * If failFast is set, remaining expectations are skipped after the first non-passed outcome,
+     * except the ones which completed by then.
+     *
+     * @return outcomes in the order of the expectations in the suite
+     */
+    List<Outcome> run(AclCheckContextPool pool,
+                      int parallelism,
+                      boolean failFast,
+                      Consumer<Outcome> listener) {
+        ExecutorService executor = Utils.daemonThreadPool("kalc-suite", parallelism);
+        try {
+            // parsing is submitted before checks, so checks waiting for policies never starve parsing
+            Map<Path, CompletableFuture<AclPolicy>> policies = new HashMap<>();
+            for (Expectation expectation : suite.expectations) {
+                for (String ref : new String[] { expectation.base, expectation.target }) {
+                    if (ref != null) {
+                        policies.computeIfAbsent(resolve(ref), path -> CompletableFuture.supplyAsync(
+                                () -> readPolicy(path), executor));
+                    }
+                }
+            }
+
+            CompletionService<Outcome> completionService = new ExecutorCompletionService<>(executor);
+            Map<Future<Outcome>, Integer> futures = new LinkedHashMap<>();
+            for (int i = 0; i < suite.expectations.size(); i++) {
+                int index = i;
+                futures.put(completionService.submit(() -> evaluate(index, pool, policies)), index);
+            }
+
+            List<Outcome> outcomes = new ArrayList<>();
+            int total = futures.size();
+            for (int i = 0; i < total; i++) {
+                Future<Outcome> future = completionService.take();
+                futures.remove(future);
+                Outcome outcome = future.get();
+                outcomes.add(outcome);
+                listener.accept(outcome);
+                if (failFast && outcome.status() != Status.passed) {
+                    break;
+                }
+            }
+            for (Map.Entry<Future<Outcome>, Integer> remaining : futures.entrySet()) {
+                final Outcome outcome;
+                if (remaining.getKey().cancel(true)) {
+                    outcome = Outcome.builder()
+                                     .index(remaining.getValue())
+                                     .name(nameOf(remaining.getValue()))
+                                     .status(Status.skipped)
+                                     .build();
+                } else {
+                    // already completed but not taken yet
+                    outcome = remaining.getKey().get();
+                }
+                outcomes.add(outcome);
+                listener.accept(outcome);
+            }
+            outcomes.sort(Comparator.comparingInt(Outcome::index));
+            return outcomes;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Outcome evaluate(int index,
+                             AclCheckContextPool pool,
+                             Map<Path, CompletableFuture<AclPolicy>> policies) {
+        Expectation expectation = suite.expectations.get(index);
+        Outcome.OutcomeBuilder builder = Outcome.builder().index(index).name(nameOf(index));
+        long start = System.nanoTime();
+        try {
+            if (expectation.base == null || expectation.target == null || expectation.check == null) {
+                throw new IllegalArgumentException("base, target and check are required");
+            }
+            AclPolicy base = policies.get(resolve(expectation.base)).join();
+            AclPolicy target = policies.get(resolve(expectation.target)).join();
+
+            final boolean actual;
+            final Optional<String> unknownReason;
+            Optional<Integer> uncoveredEntry = Optional.empty();
+            switch (expectation.check) {
+                case intersection:
+                    IntersectionResult intersection = check(pool, ctx -> ctx.intersection(base, target));
+                    actual = intersection.intersects();
+                    unknownReason = intersection.unknownReason();
+                    builder.example(intersection.example());
+                    break;
+                case supersetOf:
+                    SupersetResult superset = check(pool, ctx -> ctx.supersetOf(base, target));
+                    actual = superset.isSuperset();
+                    unknownReason = superset.unknownReason();
+                    builder.example(superset.counterexample());
+                    uncoveredEntry = superset.uncoveredEntry();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown check: " + expectation.check);
+            }
+
+            if (unknownReason.isPresent()) {
+                builder.status(Status.error).message(Optional.of("unknown (" + unknownReason.get() + ')'));
+            } else {
+                builder.actual(Optional.of(actual));
+                if (actual == expectation.expect) {
+                    builder.status(Status.passed);
+                } else {
+                    builder.status(Status.failed)
+                           .message(Optional.of(String.format("expected %s to be %s but was %s%s",
+                                                              expectation.check, expectation.expect, actual,
+                                                              uncoveredEntry.map(i -> String.format(
+                                                                      " (target entry %d is not covered)", i))
+                                                                            .orElse(""))));
+                }
+            }
+        } catch (CompletionException e) {
+            // failed to read the policy
+            builder.status(Status.error).message(Optional.of(String.valueOf(e.getCause())));
+        } catch (RuntimeException e) {
+            builder.status(Status.error).message(Optional.of(String.valueOf(e)));
+        }
+        return builder.elapsedNanos(System.nanoTime() - start).build();
+    }
+
+    /**
+     * Run the check on the pool and wait for the result.
+     * If the waiting thread is interrupted by cancellation, the native solver is interrupted as well.
+     */
+    private static <T> T check(AclCheckContextPool pool, Function<AclCheckContext, T> check) {
+        Future<T> future = pool.submit(check);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private String nameOf(int index) {
+        String name = suite.expectations.get(index).name;
+        return name != null ? name : "expectation-" + index;
+    }
+
+    private Path resolve(String ref) {
+        String path = suite.policies.getOrDefault(ref, ref);
+        return baseDir.resolve(path).normalize();
+    }
+
+    private static AclPolicy readPolicy(Path path) {
+        try {
+            return Cli.readPolicy(path.toFile());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write outcomes as a JUnit XML report which CI systems can render.
+     */
+    static void writeJUnitXml(String suiteName, List<Outcome> outcomes, Path file) throws IOException {
+        long totalNanos = 0;
+        Map<Status, Integer> counts = new HashMap<>();
+        for (Outcome outcome : outcomes) {
+            totalNanos += outcome.elapsedNanos();
+            counts.merge(outcome.status(), 1, Integer::sum);
+        }
+
+        try (OutputStream os = Files.newOutputStream(file)) {
+            XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(os, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("testsuite");
+            writer.writeAttribute("name", suiteName);
+            writer.writeAttribute("tests", String.valueOf(outcomes.size()));
+            writer.writeAttribute("failures", String.valueOf(counts.getOrDefault(Status.failed, 0)));
+            writer.writeAttribute("errors", String.valueOf(counts.getOrDefault(Status.error, 0)));
+            writer.writeAttribute("skipped", String.valueOf(counts.getOrDefault(Status.skipped, 0)));
+            writer.writeAttribute("time", seconds(totalNanos));
+            for (Outcome outcome : outcomes) {
+                writer.writeStartElement("testcase");
+                writer.writeAttribute("classname", suiteName);
+                writer.writeAttribute("name", outcome.name());
+                writer.writeAttribute("time", seconds(outcome.elapsedNanos()));
+                switch (outcome.status()) {
+                    case failed:
+                        writer.writeStartElement("failure");
+                        writer.writeAttribute("message", outcome.message().orElse(""));
+                        writer.writeCharacters("example: " + outcome.example().map(String::valueOf).orElse("none"));
+                        writer.writeEndElement();
+                        break;
+                    case error:
+                        writer.writeEmptyElement("error");
+                        writer.writeAttribute("message", outcome.message().orElse(""));
+                        break;
+                    case skipped:
+                        writer.writeEmptyElement("skipped");
+                        break;
+                    default:
+                        break;
+                }
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+    }
+}
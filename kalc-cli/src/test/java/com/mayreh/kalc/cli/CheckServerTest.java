@@ -0,0 +1,202 @@
+package com.mayreh.kalc.cli;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import org.apache.kafka.common.acl.AccessControlEntry;
+import org.apache.kafka.common.acl.AclBinding;
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.acl.AclPermissionType;
+import org.apache.kafka.common.resource.PatternType;
+import org.apache.kafka.common.resource.ResourcePattern;
+import org.apache.kafka.common.resource.ResourceType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mayreh.kalc.AclCheckContextPool;
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.AclPolicySnapshot;
+
+public class CheckServerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final AclPolicy policy = AclPolicy.fromAclBindings(Collections.singletonList(new AclBinding(
+            new ResourcePattern(ResourceType.TOPIC, "foo-", PatternType.PREFIXED),
+            new AccessControlEntry("User:foo", "*", AclOperation.READ, AclPermissionType.ALLOW))));
+
+    private Path policyDir;
+    private AclCheckContextPool pool;
+    private CheckServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        policyDir = folder.newFolder("policies").toPath();
+        Cli.mapper.writeValue(policyDir.resolve("policy.yml").toFile(), policy);
+        Cli.mapper.writeValue(folder.newFile("outside.yml"), policy);
+        Files.createSymbolicLink(policyDir.resolve("link.yml"), folder.getRoot().toPath().resolve("outside.yml"));
+
+        pool = new AclCheckContextPool(1);
+        server = server(Optional.of(policyDir), 1024 * 1024);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        pool.close();
+    }
+
+    @Test
+    public void testCheck() throws IOException {
+        ObjectNode request = request("policy.yml");
+        request.set("targetPolicy", Cli.mapper.valueToTree(policy));
+
+        Response response = post(server, request);
+        assertEquals(200, response.status);
+        assertTrue(response.body.get("result").asBoolean());
+    }
+
+    @Test
+    public void testPolicyFileMustBeInPolicyDir() throws IOException {
+        assertEquals(200, post(server, request("policy.yml")).status);
+        assertEquals(200, post(server, request("../policies/policy.yml")).status);
+
+        for (String file : Arrays.asList("../outside.yml", "link.yml", folder.getRoot() + "/outside.yml")) {
+            Response response = post(server, request(file));
+            assertEquals(file, 400, response.status);
+            assertEquals("basePolicyFile must be in the policy directory", response.body.get("error").asText());
+        }
+
+        try (CheckServer noDirServer = server(Optional.empty(), 1024 * 1024)) {
+            noDirServer.start();
+            assertEquals(400, post(noDirServer, request("policy.yml")).status);
+        }
+    }
+
+    @Test
+    public void testPolicyCachedByContent() throws IOException {
+        byte[] content = Files.readAllBytes(policyDir.resolve("policy.yml"));
+        AclPolicy parsed = server.cachedPolicy(content);
+        assertEquals(policy, parsed);
+        assertSame(parsed, server.cachedPolicy(content.clone()));
+
+        Path snapshot = policyDir.resolve("policy.bin");
+        AclPolicySnapshot.write(policy, snapshot);
+        AclPolicy parsedSnapshot = server.cachedPolicy(Files.readAllBytes(snapshot));
+        assertEquals(policy, parsedSnapshot);
+        assertNotSame(parsed, parsedSnapshot);
+    }
+
+    @Test
+    public void testErrorStatus() throws IOException {
+        assertEquals(400, post(server, "{".getBytes(UTF_8)).status);
+        assertEquals(400, post(server, mapper.createObjectNode().put("check", "intersection")).status);
+        assertEquals(400, post(server, request("policy.yml").put("check", "subsetOf")).status);
+        assertEquals(400, post(server, request("missing.yml")).status);
+
+        Path snapshot = policyDir.resolve("truncated.bin");
+        AclPolicySnapshot.write(policy, snapshot);
+        byte[] content = Files.readAllBytes(snapshot);
+        Files.write(snapshot, Arrays.copyOf(content, content.length - 3));
+        Response response = post(server, request("truncated.bin"));
+        assertEquals(400, response.status);
+        assertTrue(response.body.get("error").asText().startsWith("Malformed policy snapshot"));
+
+        try (CheckServer smallServer = server(Optional.of(policyDir), 16)) {
+            smallServer.start();
+            response = post(smallServer, request("policy.yml"));
+            assertEquals(400, response.status);
+            assertEquals("Request body exceeds 16 bytes", response.body.get("error").asText());
+        }
+
+        // failures other than the request are server errors
+        pool.close();
+        assertEquals(500, post(server, request("policy.yml")).status);
+    }
+
+    private CheckServer server(Optional<Path> policyDir, int maxRequestBytes) throws IOException {
+        return new CheckServer(mapper,
+                               pool,
+                               new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                               2,
+                               16,
+                               maxRequestBytes,
+                               policyDir);
+    }
+
+    private ObjectNode request(String baseFile) {
+        ObjectNode request = mapper.createObjectNode();
+        request.put("check", "supersetOf");
+        request.put("basePolicyFile", baseFile);
+        request.put("targetPolicyFile", "policy.yml");
+        return request;
+    }
+
+    private Response post(CheckServer server, JsonNode request) throws IOException {
+        return post(server, mapper.writeValueAsBytes(request));
+    }
+
+    private Response post(CheckServer server, byte[] body) throws IOException {
+        InetSocketAddress address = server.address();
+        URL url = new URL("http", address.getHostString(), address.getPort(), "/check");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            try (OutputStream os = connection.getOutputStream()) {
+                os.write(body);
+            }
+            int status = connection.getResponseCode();
+            try (InputStream is = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                return new Response(status, mapper.readTree(readAll(is)));
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = is.read(buffer)) >= 0) {
+            os.write(buffer, 0, n);
+        }
+        return os.toByteArray();
+    }
+
+    private static final class Response {
+        final int status;
+        final JsonNode body;
+
+        Response(int status, JsonNode body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.mayreh.kalc.cli;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mayreh.kalc.cli.Cli.Dump.Format;
+import com.mayreh.kalc.cli.ClusterDumper.Clusters;
+import com.mayreh.kalc.cli.ClusterDumper.Outcome;
+
+public class ClusterDumperTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRejectInvalidNames() throws IOException {
+        for (String name : new String[] { "''", "../escaped", "a/b", "'a\\b'" }) {
+            ClusterDumper dumper = dumper("clusters:\n"
+                                          + "  - name: " + name + '\n'
+                                          + "    bootstrapServers: localhost:9092\n");
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> dumper.run(1, o -> {}));
+            assertTrue(e.getMessage().startsWith("Invalid cluster name: "));
+        }
+
+        ClusterDumper dumper = dumper("clusters:\n"
+                                      + "  - name: cluster-1\n"
+                                      + "    bootstrapServers: localhost:9092\n"
+                                      + "  - bootstrapServers: localhost:9092\n");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> dumper.run(1, o -> {}));
+        assertEquals("Duplicate cluster name: cluster-1", e.getMessage());
+        // validated before anything is written
+        assertFalse(Files.exists(outputDir()));
+    }
+
+    @Test
+    public void testFailWithoutRetry() throws IOException {
+        ClusterDumper dumper = dumper("clusters:\n"
+                                      + "  - name: no-bootstrap\n"
+                                      + "  - name: invalid-config\n"
+                                      + "    bootstrapServers: localhost:9092\n"
+                                      + "    properties:\n"
+                                      + "      security.protocol: INVALID\n");
+        List<Outcome> notified = new ArrayList<>();
+        List<Outcome> outcomes = dumper.run(2, notified::add);
+        assertEquals(2, notified.size());
+        assertEquals(2, outcomes.size());
+
+        Outcome noBootstrap = outcomes.get(0);
+        assertEquals("no-bootstrap", noBootstrap.name());
+        assertFalse(noBootstrap.succeeded());
+        assertEquals("bootstrapServers is required", noBootstrap.message().get());
+
+        // invalid configs never succeed, so they are not retried
+        Outcome invalidConfig = outcomes.get(1);
+        assertEquals("invalid-config", invalidConfig.name());
+        assertFalse(invalidConfig.succeeded());
+        assertEquals(1, invalidConfig.attempts());
+        assertFalse(invalidConfig.output().isPresent());
+        try (Stream<Path> files = Files.list(outputDir())) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private ClusterDumper dumper(String clusters) throws IOException {
+        File file = folder.getRoot().toPath().resolve("clusters.yml").toFile();
+        Files.write(file.toPath(), clusters.getBytes(UTF_8));
+        return new ClusterDumper(Cli.mapper.readValue(file, Clusters.class),
+                                 folder.getRoot().toPath(),
+                                 outputDir(),
+                                 Format.yaml,
+                                 Duration.ofSeconds(1),
+                                 3,
+                                 Duration.ofMillis(10));
+    }
+
+    private Path outputDir() {
+        return folder.getRoot().toPath().resolve("output");
+    }
+}
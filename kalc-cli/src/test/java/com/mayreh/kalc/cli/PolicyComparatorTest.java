@@ -0,0 +1,108 @@
+package com.mayreh.kalc.cli;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.kafka.common.acl.AccessControlEntry;
+import org.apache.kafka.common.acl.AclBinding;
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.acl.AclPermissionType;
+import org.apache.kafka.common.resource.PatternType;
+import org.apache.kafka.common.resource.ResourcePattern;
+import org.apache.kafka.common.resource.ResourceType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mayreh.kalc.AclCheckContextPool;
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.cli.PolicyComparator.Comparison;
+import com.mayreh.kalc.cli.PolicyComparator.Relation;
+
+public class PolicyComparatorTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Map<String, File> policyFiles = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        policyFiles.put("tokyo", writePolicy("tokyo.yml", "foo-", PatternType.PREFIXED));
+        policyFiles.put("osaka", writePolicy("osaka.yml", "foo-logs", PatternType.LITERAL));
+        policyFiles.put("nagoya", writePolicy("nagoya.yml", "foo-", PatternType.PREFIXED));
+    }
+
+    @Test
+    public void testCompareAllPairs() {
+        List<Comparison> notified = Collections.synchronizedList(new ArrayList<>());
+        List<Comparison> comparisons;
+        try (AclCheckContextPool pool = new AclCheckContextPool(2)) {
+            comparisons = new PolicyComparator(policyFiles).run(pool, 2, Optional.empty(), notified::add);
+        }
+        assertEquals(3, notified.size());
+        assertEquals(Arrays.asList("osaka-nagoya", "tokyo-nagoya", "tokyo-osaka"),
+                     comparisons.stream().map(c -> c.left() + '-' + c.right()).collect(toList()));
+        assertEquals(Arrays.asList(Relation.rightSuperset, Relation.equivalent, Relation.leftSuperset),
+                     comparisons.stream().map(Comparison::relation).collect(toList()));
+
+        Comparison tokyoOsaka = comparisons.get(2);
+        assertTrue(tokyoOsaka.onlyLeft().isPresent());
+        assertFalse(tokyoOsaka.onlyRight().isPresent());
+        assertEquals("foo", tokyoOsaka.onlyLeft().get().userPrincipal());
+        assertFalse(comparisons.get(1).onlyLeft().isPresent());
+    }
+
+    @Test
+    public void testCompareAgainstReference() {
+        List<Comparison> comparisons;
+        try (AclCheckContextPool pool = new AclCheckContextPool(2)) {
+            comparisons = new PolicyComparator(policyFiles).run(pool, 2, Optional.of("osaka"), c -> {});
+        }
+        assertEquals(Arrays.asList("osaka-nagoya", "tokyo-osaka"),
+                     comparisons.stream().map(c -> c.left() + '-' + c.right()).collect(toList()));
+
+        try (AclCheckContextPool pool = new AclCheckContextPool(1)) {
+            IllegalArgumentException e = assertThrows(
+                    IllegalArgumentException.class,
+                    () -> new PolicyComparator(policyFiles).run(pool, 1, Optional.of("kyoto"), c -> {}));
+            assertEquals("Unknown reference: kyoto", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnreadablePolicy() {
+        policyFiles.put("kyoto", new File(folder.getRoot(), "missing.yml"));
+        List<Comparison> comparisons;
+        try (AclCheckContextPool pool = new AclCheckContextPool(2)) {
+            comparisons = new PolicyComparator(policyFiles).run(pool, 2, Optional.of("kyoto"), c -> {});
+        }
+        assertEquals(3, comparisons.size());
+        for (Comparison comparison : comparisons) {
+            assertEquals(Relation.unknown, comparison.relation());
+            assertTrue(comparison.message().get().contains("missing.yml"));
+        }
+    }
+
+    private File writePolicy(String fileName, String topic, PatternType patternType) throws IOException {
+        AclPolicy policy = AclPolicy.fromAclBindings(Collections.singletonList(new AclBinding(
+                new ResourcePattern(ResourceType.TOPIC, topic, patternType),
+                new AccessControlEntry("User:foo", "*", AclOperation.READ, AclPermissionType.ALLOW))));
+        File file = folder.newFile(fileName);
+        Cli.mapper.writeValue(file, policy);
+        return file;
+    }
+}
@@ -0,0 +1,144 @@
+package com.mayreh.kalc.cli;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.kafka.common.acl.AccessControlEntry;
+import org.apache.kafka.common.acl.AclBinding;
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.acl.AclPermissionType;
+import org.apache.kafka.common.resource.PatternType;
+import org.apache.kafka.common.resource.ResourcePattern;
+import org.apache.kafka.common.resource.ResourceType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.cli.Replayer.Change;
+import com.mayreh.kalc.cli.Replayer.DiffKey;
+import com.mayreh.kalc.cli.Replayer.Format;
+import com.mayreh.kalc.cli.Replayer.Report;
+
+public class ReplayerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AclPolicy current = policy(new ResourcePattern(ResourceType.TOPIC, "foo-", PatternType.PREFIXED));
+    private final AclPolicy proposed = policy(new ResourcePattern(ResourceType.TOPIC, "foo-logs", PatternType.LITERAL));
+
+    @Test
+    public void testCsv() throws IOException {
+        Path file = write("# comment\n"
+                          + "User:foo,192.0.2.1,READ,TOPIC,foo-logs\n"
+                          + "User:foo,192.0.2.1,READ,TOPIC,foo-metrics\r\n"
+                          + "\n"
+                          + "User:bar,192.0.2.1,READ,TOPIC,foo-logs\n"
+                          + "User:foo,192.0.2.1,READ,TOPIC,foo-a,b\n"
+                          + "Group:foo,192.0.2.1,READ,TOPIC,foo-logs\n"
+                          + "User:foo,192.0.2.1,FLY,TOPIC,foo-logs\n"
+                          + "User:foo,192.0.2.1,READ,TOPIK,foo-logs\n"
+                          + "User:foo,192.0.2.1,READ\n"
+                          + "User:foo,192.0.2.1,READ,TOPIC,foo-metrics");
+
+        Report report = new Replayer(current, proposed, Format.csv, 2).replay(file);
+        assertEquals(5, report.total);
+        assertEquals(4, report.errors);
+        assertEquals(1, report.allowedByBoth);
+        assertEquals(1, report.deniedByBoth);
+        assertEquals(3, report.newlyDenied);
+        assertEquals(0, report.newlyAllowed);
+        assertEquals(Long.valueOf(2), report.differences.get(new DiffKey(
+                Change.newlyDenied, "foo", AclOperation.READ, ResourceType.TOPIC, "foo-metrics")));
+        assertEquals(Long.valueOf(1), report.differences.get(new DiffKey(
+                Change.newlyDenied, "foo", AclOperation.READ, ResourceType.TOPIC, "foo-a,b")));
+    }
+
+    @Test
+    public void testQuotedCsv() throws IOException {
+        String principal = "User:CN=app,OU=team,O=corp";
+        AclPolicy current = policy(principal, new ResourcePattern(ResourceType.TOPIC, "foo-", PatternType.PREFIXED));
+        AclPolicy proposed = policy(principal,
+                                    new ResourcePattern(ResourceType.TOPIC, "foo-logs", PatternType.LITERAL));
+        Path file = write("\"User:CN=app,OU=team,O=corp\",192.0.2.1,READ,TOPIC,foo-logs\n"
+                          + "\"User:CN=app,OU=team,O=corp\",\"192.0.2.1\",READ,TOPIC,\"foo-\"\"a\"\",b\"\n"
+                          + "User:CN=app,OU=team,O=corp,192.0.2.1,READ,TOPIC,foo-logs\n"
+                          + "\"User:CN=app,OU=team,O=corp\"x,192.0.2.1,READ,TOPIC,foo-logs\n"
+                          + "\"User:CN=app,192.0.2.1,READ,TOPIC,foo-logs\n");
+
+        Report report = new Replayer(current, proposed, Format.csv, 1).replay(file);
+        assertEquals(2, report.total);
+        assertEquals(3, report.errors);
+        assertEquals(1, report.allowedByBoth);
+        assertEquals(Collections.singletonMap(
+                new DiffKey(Change.newlyDenied,
+                            "CN=app,OU=team,O=corp",
+                            AclOperation.READ,
+                            ResourceType.TOPIC,
+                            "foo-\"a\",b"), 1L),
+                     report.differences);
+    }
+
+    @Test
+    public void testNdjson() throws IOException {
+        Path file = write(
+                "{\"userPrincipal\": \"User:foo\", \"host\": \"192.0.2.1\", \"operation\": \"READ\", "
+                + "\"resourceType\": \"TOPIC\", \"resourceName\": \"foo-logs\", \"timestamp\": 1}\n"
+                + "{\"timestamp\": 2, \"resourceName\": \"foo-\\u0061\\\"b\", \"resourceType\": \"TOPIC\", "
+                + "\"operation\": \"READ\", \"host\": \"192.0.2.1\", \"userPrincipal\": \"User:foo\"}\n"
+                + "{\"userPrincipal\": \"User:foo\", \"host\": \"192.0.2.1\", \"operation\": \"READ\"}\n"
+                + "{\"userPrincipal\": \"foo\", \"host\": \"192.0.2.1\", \"operation\": \"READ\", "
+                + "\"resourceType\": \"TOPIC\", \"resourceName\": \"foo-logs\"}\n"
+                + "{\"userPrincipal\": \"User:foo\"\n");
+
+        Report report = new Replayer(current, proposed, Format.ndjson, 1).replay(file);
+        assertEquals(2, report.total);
+        assertEquals(3, report.errors);
+        assertEquals(1, report.allowedByBoth);
+        assertEquals(Collections.singletonMap(
+                new DiffKey(Change.newlyDenied, "foo", AclOperation.READ, ResourceType.TOPIC, "foo-a\"b"), 1L),
+                     report.differences);
+    }
+
+    @Test
+    public void testChunksEndAtLineBoundary() throws IOException {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            log.append("User:foo,192.0.2.1,READ,TOPIC,foo-")
+               .append(i % 3 == 0 ? "logs" : "topic-" + i)
+               .append('\n');
+        }
+        Path file = write(log.toString());
+
+        for (long chunkSize : Arrays.asList(1L, 7L, 100L, 1L << 20)) {
+            Report report = new Replayer(current, proposed, Format.csv, 4, chunkSize).replay(file);
+            assertEquals(1000, report.total);
+            assertEquals(0, report.errors);
+            assertEquals(334, report.allowedByBoth);
+            assertEquals(666, report.newlyDenied);
+            assertEquals(666, report.differences.size());
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(UTF_8));
+        return file;
+    }
+
+    private static AclPolicy policy(ResourcePattern pattern) {
+        return policy("User:foo", pattern);
+    }
+
+    private static AclPolicy policy(String principal, ResourcePattern pattern) {
+        return AclPolicy.fromAclBindings(Collections.singletonList(new AclBinding(
+                pattern,
+                new AccessControlEntry(principal, "*", AclOperation.READ, AclPermissionType.ALLOW))));
+    }
+}
@@ -0,0 +1,185 @@
+package com.mayreh.kalc.cli;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.apache.kafka.common.acl.AccessControlEntry;
+import org.apache.kafka.common.acl.AclBinding;
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.acl.AclPermissionType;
+import org.apache.kafka.common.resource.PatternType;
+import org.apache.kafka.common.resource.ResourcePattern;
+import org.apache.kafka.common.resource.ResourceType;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.mayreh.kalc.AclCheckContextPool;
+import com.mayreh.kalc.AclPolicy;
+import com.mayreh.kalc.RequestTuple;
+import com.mayreh.kalc.cli.SuiteRunner.Outcome;
+import com.mayreh.kalc.cli.SuiteRunner.Status;
+import com.mayreh.kalc.cli.SuiteRunner.Suite;
+
+public class SuiteRunnerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws IOException {
+        folder.newFolder("policies");
+        writePolicy("policies/prefixed.yml", new ResourcePattern(ResourceType.TOPIC, "foo-", PatternType.PREFIXED));
+        writePolicy("policies/literal.yml", new ResourcePattern(ResourceType.TOPIC, "foo-logs", PatternType.LITERAL));
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        SuiteRunner runner = runner("name: acl\n"
+                                    + "policies:\n"
+                                    + "  current: policies/prefixed.yml\n"
+                                    + "expectations:\n"
+                                    + "  - name: prefixed-covers-literal\n"
+                                    + "    base: current\n"
+                                    + "    target: policies/literal.yml\n"
+                                    + "    check: supersetOf\n"
+                                    + "  - name: literal-covers-prefixed\n"
+                                    + "    base: policies/literal.yml\n"
+                                    + "    target: current\n"
+                                    + "    check: supersetOf\n"
+                                    + "  - name: disjoint\n"
+                                    + "    base: current\n"
+                                    + "    target: policies/literal.yml\n"
+                                    + "    check: intersection\n"
+                                    + "    expect: false\n"
+                                    + "  - name: missing-policy\n"
+                                    + "    base: current\n"
+                                    + "    target: policies/missing.yml\n"
+                                    + "    check: intersection\n"
+                                    + "  - base: current\n"
+                                    + "    check: intersection\n");
+        assertEquals("acl", runner.name());
+
+        List<Outcome> notified = Collections.synchronizedList(new ArrayList<>());
+        List<Outcome> outcomes;
+        try (AclCheckContextPool pool = new AclCheckContextPool(2)) {
+            outcomes = runner.run(pool, 2, false, notified::add);
+        }
+        assertEquals(5, notified.size());
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), outcomes.stream().map(Outcome::index).collect(toList()));
+        assertEquals(Arrays.asList("prefixed-covers-literal", "literal-covers-prefixed", "disjoint",
+                                   "missing-policy", "expectation-4"),
+                     outcomes.stream().map(Outcome::name).collect(toList()));
+        assertEquals(Arrays.asList(Status.passed, Status.failed, Status.failed, Status.error, Status.error),
+                     outcomes.stream().map(Outcome::status).collect(toList()));
+
+        assertEquals(Optional.of(false), outcomes.get(1).actual());
+        assertTrue(outcomes.get(1).example().isPresent());
+        assertEquals(Optional.of("expected supersetOf to be true but was false"), outcomes.get(1).message());
+        assertEquals(Optional.of(true), outcomes.get(2).actual());
+        assertFalse(outcomes.get(3).actual().isPresent());
+        assertEquals(Optional.of("java.lang.IllegalArgumentException: base, target and check are required"),
+                     outcomes.get(4).message());
+    }
+
+    @Test
+    public void testFailFastReportsCompletedOutcomes() throws IOException {
+        StringBuilder suite = new StringBuilder("expectations:\n");
+        for (int i = 0; i < 4; i++) {
+            suite.append("  - base: policies/literal.yml\n")
+                 .append("    target: policies/prefixed.yml\n")
+                 .append("    check: supersetOf\n")
+                 .append("    expect: ").append(i > 0 ? "false" : "true").append('\n');
+        }
+        SuiteRunner runner = runner(suite.toString());
+
+        List<Outcome> outcomes;
+        try (AclCheckContextPool pool = new AclCheckContextPool(1)) {
+            outcomes = runner.run(pool, 1, true, outcome -> {
+                if (outcome.index() == 0) {
+                    // give the remaining expectations time to complete before fail-fast takes effect
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+        assertEquals(Arrays.asList(Status.failed, Status.passed, Status.passed, Status.passed),
+                     outcomes.stream().map(Outcome::status).collect(toList()));
+    }
+
+    @Test
+    public void testWriteJUnitXml() throws Exception {
+        RequestTuple example = new RequestTuple(
+                "foo", "192.0.2.1", AclOperation.READ, ResourceType.TOPIC, "foo-metrics");
+        List<Outcome> outcomes = Arrays.asList(
+                Outcome.builder().index(0).name("a").status(Status.passed).actual(Optional.of(true))
+                       .elapsedNanos(1_500_000_000L).build(),
+                Outcome.builder().index(1).name("b").status(Status.failed).actual(Optional.of(false))
+                       .example(Optional.of(example)).message(Optional.of("expected <true>"))
+                       .elapsedNanos(500_000_000L).build(),
+                Outcome.builder().index(2).name("c").status(Status.error)
+                       .message(Optional.of("unknown (timeout)")).build(),
+                Outcome.builder().index(3).name("d").status(Status.skipped).build());
+        Path file = folder.getRoot().toPath().resolve("report.xml");
+        SuiteRunner.writeJUnitXml("acl", outcomes, file);
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file.toFile());
+        Element suite = document.getDocumentElement();
+        assertEquals("testsuite", suite.getTagName());
+        assertEquals("acl", suite.getAttribute("name"));
+        assertEquals("4", suite.getAttribute("tests"));
+        assertEquals("1", suite.getAttribute("failures"));
+        assertEquals("1", suite.getAttribute("errors"));
+        assertEquals("1", suite.getAttribute("skipped"));
+        assertEquals("2.000", suite.getAttribute("time"));
+
+        NodeList testcases = suite.getElementsByTagName("testcase");
+        assertEquals(4, testcases.getLength());
+        Element passed = (Element) testcases.item(0);
+        assertEquals("a", passed.getAttribute("name"));
+        assertEquals("1.500", passed.getAttribute("time"));
+        assertEquals(0, passed.getChildNodes().getLength());
+
+        Element failure = (Element) ((Element) testcases.item(1)).getElementsByTagName("failure").item(0);
+        assertEquals("expected <true>", failure.getAttribute("message"));
+        assertEquals("example: " + example, failure.getTextContent());
+
+        Element error = (Element) ((Element) testcases.item(2)).getElementsByTagName("error").item(0);
+        assertEquals("unknown (timeout)", error.getAttribute("message"));
+
+        assertEquals(1, ((Element) testcases.item(3)).getElementsByTagName("skipped").getLength());
+    }
+
+    private SuiteRunner runner(String suite) throws IOException {
+        Path file = folder.getRoot().toPath().resolve("suite.yml");
+        Files.write(file, suite.getBytes(UTF_8));
+        return new SuiteRunner(Cli.mapper.readValue(file.toFile(), Suite.class), folder.getRoot().toPath());
+    }
+
+    private void writePolicy(String path, ResourcePattern pattern) throws IOException {
+        AclPolicy policy = AclPolicy.fromAclBindings(Collections.singletonList(new AclBinding(
+                pattern,
+                new AccessControlEntry("User:foo", "*", AclOperation.READ, AclPermissionType.ALLOW))));
+        Cli.mapper.writeValue(folder.getRoot().toPath().resolve(path).toFile(), policy);
+    }
+}
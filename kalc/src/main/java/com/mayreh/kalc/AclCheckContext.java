@@ -1,11 +1,30 @@
 package com.mayreh.kalc;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.kafka.common.acl.AclOperation;
 import org.apache.kafka.common.resource.ResourceType;
@@ -13,7 +32,12 @@ import org.apache.kafka.common.resource.ResourceType;
 import com.mayreh.kalc.AclConstraint.AclOperationCondition;
 import com.mayreh.kalc.AclConstraint.EqualityOperator;
 import com.mayreh.kalc.AclConstraint.ResourceCondition;
+import com.mayreh.kalc.AclCheckOptions.StringSolver;
 import com.mayreh.kalc.AclConstraint.StringCondition;
+import com.mayreh.kalc.AclConstraint.StringOperator;
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.AclPolicy.Entry.PermissionType;
+import com.mayreh.kalc.EnumerationOptions.Field;
 import com.mayreh.kalc.RequestTuple.RequestTupleBuilder;
 import com.microsoft.z3.BoolExpr;
 import com.microsoft.z3.CharSort;
@@ -22,31 +46,204 @@ import com.microsoft.z3.EnumSort;
 import com.microsoft.z3.Expr;
 import com.microsoft.z3.FuncDecl;
 import com.microsoft.z3.Model;
+import com.microsoft.z3.Params;
+import com.microsoft.z3.ReExpr;
+import com.microsoft.z3.SeqExpr;
 import com.microsoft.z3.SeqSort;
+import com.microsoft.z3.Sort;
+import com.microsoft.z3.Statistics;
 import com.microsoft.z3.Solver;
 import com.microsoft.z3.Status;
+import com.microsoft.z3.Tactic;
 
+import lombok.Builder;
 import lombok.NonNull;
 import lombok.Value;
 import lombok.experimental.Accessors;
 
+/**
+ * Checks relations between {@link AclPolicy}s by encoding them into SMT formulas.
+ *
+ * Encoded {@link AclConstraint}s and {@link StringCondition}s are memoized per context,
+ * so repeated checks against the same entries don't rebuild the expressions.
+ * The context is not thread-safe.
+ */
 public class AclCheckContext implements AutoCloseable {
+    /**
+     * The engine which decided the result.
+     */
+    public enum Engine {
+        /**
+         * Decided by the SMT solver
+         */
+        Z3,
+        /**
+         * Decided by {@link SyntacticChecker} without the solver
+         */
+        Syntactic,
+        /**
+         * Returned from {@link ResultCache} without the check
+         */
+        Cache,
+    }
+
+    /**
+     * Result of the intersection check.
+     * If the result is unknown, intersects is false and no example is present.
+     */
     @Value
+    @Builder(toBuilder = true)
     @Accessors(fluent = true)
     public static class IntersectionResult {
         boolean intersects;
 
         @NonNull
-        Optional<RequestTuple> example;
+        @Builder.Default
+        Optional<RequestTuple> example = Optional.empty();
+
+        @NonNull
+        @Builder.Default
+        Engine engine = Engine.Z3;
+
+        /**
+         * Present if the solver couldn't decide the result, e.g. due to the timeout.
+         */
+        @NonNull
+        @Builder.Default
+        Optional<String> unknownReason = Optional.empty();
+
+        /**
+         * Present if {@link AclCheckOptions#collectStats()} is enabled.
+         */
+        @NonNull
+        @Builder.Default
+        Optional<CheckStats> stats = Optional.empty();
+
+        /**
+         * Present if {@link AclCheckOptions#explain()} is enabled and the policies don't intersect.
+         */
+        @NonNull
+        @Builder.Default
+        Optional<Explanation> explanation = Optional.empty();
+
+        public boolean unknown() {
+            return unknownReason.isPresent();
+        }
     }
 
+    /**
+     * Result of the superset check.
+     * If the result is unknown, isSuperset is false and no counterexample is present.
+     */
     @Value
+    @Builder(toBuilder = true)
     @Accessors(fluent = true)
     public static class SupersetResult {
         boolean isSuperset;
 
         @NonNull
-        Optional<RequestTuple> counterexample;
+        @Builder.Default
+        Optional<RequestTuple> counterexample = Optional.empty();
+
+        @NonNull
+        @Builder.Default
+        Engine engine = Engine.Z3;
+
+        /**
+         * Present if the solver couldn't decide the result, e.g. due to the timeout.
+         */
+        @NonNull
+        @Builder.Default
+        Optional<String> unknownReason = Optional.empty();
+
+        /**
+         * Present if {@link AclCheckOptions#collectStats()} is enabled.
+         */
+        @NonNull
+        @Builder.Default
+        Optional<CheckStats> stats = Optional.empty();
+
+        /**
+         * Present if {@link AclCheckOptions#explain()} is enabled and p1 is the superset of p2.
+         */
+        @NonNull
+        @Builder.Default
+        Optional<Explanation> explanation = Optional.empty();
+
+        /**
+         * Index of the Allow entry of p2 which is not covered by p1.
+         * Present if the check is decomposed per entry by {@link AclCheckContextPool#supersetOf(AclPolicy, AclPolicy)}
+         * and a counterexample is found.
+         */
+        @NonNull
+        @Builder.Default
+        Optional<Integer> uncoveredEntry = Optional.empty();
+
+        public boolean unknown() {
+            return unknownReason.isPresent();
+        }
+    }
+
+    /**
+     * Entries which are sufficient to decide the negative intersection or the positive superset result.
+     *
+     * Only entries whose removal could change the result are considered, i.e. Deny entries of both
+     * policies for intersection, and Allow entries of p1 and Deny entries of p2 for superset.
+     * Other entries are assumed to be always present.
+     */
+    @Value
+    @Accessors(fluent = true)
+    public static class Explanation {
+        /**
+         * Indexes of the entries in p1
+         */
+        @NonNull
+        List<Integer> p1Entries;
+
+        /**
+         * Indexes of the entries in p2
+         */
+        @NonNull
+        List<Integer> p2Entries;
+    }
+
+    /**
+     * Result of the comparison between old and new version of a policy.
+     */
+    @Value
+    @Builder
+    @Accessors(fluent = true)
+    public static class DiffResult {
+        @NonNull
+        PolicyDiff diff;
+
+        /**
+         * A request-tuple which the new policy allows but the old policy doesn't, if exists
+         */
+        @NonNull
+        @Builder.Default
+        Optional<RequestTuple> gained = Optional.empty();
+
+        /**
+         * A request-tuple which the old policy allows but the new policy doesn't, if exists
+         */
+        @NonNull
+        @Builder.Default
+        Optional<RequestTuple> lost = Optional.empty();
+
+        /**
+         * Present if the solver couldn't decide either direction.
+         */
+        @NonNull
+        @Builder.Default
+        Optional<String> unknownReason = Optional.empty();
+
+        /**
+         * Returns true if both versions allow exactly the same request-tuples.
+         */
+        public boolean equivalent() {
+            return !gained.isPresent() && !lost.isPresent() && !unknownReason.isPresent();
+        }
     }
 
     private static final String USER_PRINCIPAL = "userPrincipal";
@@ -55,7 +252,10 @@ public class AclCheckContext implements AutoCloseable {
     private static final String RESOURCE_TYPE = "resourceType";
     private static final String RESOURCE_NAME = "resourceName";
 
+    private final AclCheckOptions options;
     private final Context context;
+    private final Optional<Tactic> tactic;
+    private final TrieRegex trieRegex;
     private final TypedEnumSort<ResourceType> resourceTypeSort;
     private final TypedEnumSort<AclOperation> aclOperationSort;
     private final Expr<SeqSort<CharSort>> userPrincipal;
@@ -63,8 +263,20 @@ public class AclCheckContext implements AutoCloseable {
     private final Expr<EnumSort<AclOperation>> aclOperation;
     private final Expr<EnumSort<ResourceType>> resourceType;
     private final Expr<SeqSort<CharSort>> resourceName;
+    private final LruCache<AclConstraint, BoolExpr> constraintCache;
+    private final Map<Expr<SeqSort<CharSort>>, LruCache<StringCondition, BoolExpr>> stringConditionCaches;
+    // keyed by the field name followed by the sorted literals, so that checks over the same literals
+    // reuse the enum sort instead of declaring a new one in the context every time
+    private final LruCache<List<String>, FiniteDomain> domainCache;
+    private final Domains noDomains = new Domains();
+    private int domainId;
 
     public AclCheckContext() {
+        this(AclCheckOptions.defaults());
+    }
+
+    public AclCheckContext(AclCheckOptions options) {
+        this.options = options;
         context = new Context();
         resourceTypeSort = TypedEnumSort.mkSort(
                 context,
@@ -81,6 +293,15 @@ public class AclCheckContext implements AutoCloseable {
         aclOperation = context.mkConst(OPERATION, aclOperationSort.sort());
         resourceType = context.mkConst(RESOURCE_TYPE, resourceTypeSort.sort());
         resourceName = context.mkConst(RESOURCE_NAME, context.getStringSort());
+        tactic = mkTactic(options.tactics());
+        trieRegex = new TrieRegex(context);
+
+        constraintCache = new LruCache<>(options.encodingCacheSize());
+        domainCache = new LruCache<>(options.encodingCacheSize());
+        stringConditionCaches = new IdentityHashMap<>();
+        for (Expr<SeqSort<CharSort>> expr : Arrays.asList(userPrincipal, host, resourceName)) {
+            stringConditionCaches.put(expr, new LruCache<>(options.encodingCacheSize()));
+        }
     }
 
     /**
@@ -88,14 +309,26 @@ public class AclCheckContext implements AutoCloseable {
      * Returns the example of the request-tuple if intersects.
      */
     public IntersectionResult intersection(AclPolicy p1, AclPolicy p2) {
-        Solver solver = context.mkSolver();
-        solver.add(encode(p1), encode(p2));
-        Status status = solver.check();
-
-        if (status == Status.SATISFIABLE) {
-            return new IntersectionResult(true, Optional.of(buildExample(solver.getModel())));
+        if (options.explain()) {
+            return explainedIntersection(p1, p2);
+        }
+        if (syntacticallyDecidable(p1, p2)) {
+            return syntacticIntersection(p1, p2, () -> new SyntacticChecker().findIntersection(p1, p2));
         }
-        return new IntersectionResult(false, Optional.empty());
+        SymmetryReduction reduction = symmetryReduction(p1, p2);
+        AclPolicy q1 = reduction.reduce(p1);
+        AclPolicy q2 = reduction.reduce(p2);
+        Solver solver = mkSolver();
+        Domains domains = domains(q1, q2);
+        return check(solver,
+                     entries(p1, p2),
+                     () -> new BoolExpr[] { encode(q1, domains), encode(q2, domains) },
+                     (status, stats) -> {
+                         IntersectionResult result = intersectionResult(solver, status, stats, domains);
+                         return result.toBuilder()
+                                      .example(result.example().map(reduction::expand))
+                                      .build();
+                     });
     }
 
     /**
@@ -104,14 +337,191 @@ public class AclCheckContext implements AutoCloseable {
      * (i.e. there's a request-tuple which p2 contains and p1 doesn't contain)
      */
     public SupersetResult supersetOf(AclPolicy p1, AclPolicy p2) {
-        Solver solver = context.mkSolver();
+        if (options.explain()) {
+            return explainedSupersetOf(p1, p2);
+        }
+        if (syntacticallyDecidable(p1, p2)) {
+            return syntacticSuperset(p1, p2, () -> new SyntacticChecker().findCounterexample(p1, p2));
+        }
+        SymmetryReduction reduction = symmetryReduction(p1, p2);
+        AclPolicy q1 = reduction.reduce(p1);
+        AclPolicy q2 = reduction.reduce(p2);
+        Solver solver = mkSolver();
+        Domains domains = domains(q1, q2);
+        return check(solver,
+                     entries(p1, p2),
+                     () -> new BoolExpr[] { context.mkNot(encode(q1, domains)), encode(q2, domains) },
+                     (status, stats) -> {
+                         SupersetResult result = supersetResult(solver, status, stats, domains);
+                         return result.toBuilder()
+                                      .counterexample(result.counterexample().map(reduction::expand))
+                                      .build();
+                     });
+    }
+
+    /**
+     * Check if two policies intersect within the slice.
+     * Entries that don't overlap the slice don't affect the result, so passing the sub-policies
+     * returned by {@link PolicySlice#partition(AclPolicy)} keeps the formula small.
+     */
+    public IntersectionResult intersection(AclPolicy p1, AclPolicy p2, PolicySlice slice) {
+        if (syntacticallyDecidable(p1, p2)) {
+            return syntacticIntersection(
+                    p1, p2, () -> new SyntacticChecker(slice).findIntersection(p1, p2));
+        }
+        Solver solver = mkSolver();
+        Domains domains = domains(p1, p2);
+        return check(solver,
+                     entries(p1, p2),
+                     () -> new BoolExpr[] { encode(slice), encode(p1, domains), encode(p2, domains) },
+                     (status, stats) -> intersectionResult(solver, status, stats, domains));
+    }
+
+    /**
+     * Check if p1 is the superset of p2 within the slice.
+     * Entries that don't overlap the slice don't affect the result, so passing the sub-policies
+     * returned by {@link PolicySlice#partition(AclPolicy)} keeps the formula small.
+     */
+    public SupersetResult supersetOf(AclPolicy p1, AclPolicy p2, PolicySlice slice) {
+        if (syntacticallyDecidable(p1, p2)) {
+            return syntacticSuperset(
+                    p1, p2, () -> new SyntacticChecker(slice).findCounterexample(p1, p2));
+        }
+        Solver solver = mkSolver();
+        Domains domains = domains(p1, p2);
+        return check(solver,
+                     entries(p1, p2),
+                     () -> new BoolExpr[] {
+                             encode(slice), context.mkNot(encode(p1, domains)), encode(p2, domains) },
+                     (status, stats) -> supersetResult(solver, status, stats, domains));
+    }
+
+    /**
+     * Enumerate request-tuples which both policies contain.
+     *
+     * The stream is lazy and backed by a single solver, so it must be consumed before the context is closed.
+     * The stream ends early if the solver can't decide, e.g. due to the timeout.
+     */
+    public Stream<RequestTuple> intersectionExamples(
+            AclPolicy p1, AclPolicy p2, EnumerationOptions enumerationOptions) {
+        Solver solver = mkSolver();
+        solver.add(encode(p1), encode(p2));
+        return enumerate(solver, enumerationOptions);
+    }
+
+    /**
+     * Enumerate request-tuples which p2 contains and p1 doesn't contain.
+     *
+     * The stream is lazy and backed by a single solver, so it must be consumed before the context is closed.
+     * The stream ends early if the solver can't decide, e.g. due to the timeout.
+     */
+    public Stream<RequestTuple> supersetCounterexamples(
+            AclPolicy p1, AclPolicy p2, EnumerationOptions enumerationOptions) {
+        Solver solver = mkSolver();
         solver.add(context.mkNot(encode(p1)), encode(p2));
+        return enumerate(solver, enumerationOptions);
+    }
+
+    /**
+     * Compare old and new version of a policy.
+     *
+     * Only the slices that changed entries overlap can differ, so both directions are checked
+     * only within these slices against the entries overlapping them, rather than the entire policies.
+     */
+    public DiffResult diff(AclPolicy oldPolicy, AclPolicy newPolicy) {
+        PolicyDiff diff = PolicyDiff.of(oldPolicy, newPolicy);
+        Set<PolicySlice> slices = diff.slices();
+        Map<PolicySlice, AclPolicy> oldSlices = PolicySlice.partition(oldPolicy, slices);
+        Map<PolicySlice, AclPolicy> newSlices = PolicySlice.partition(newPolicy, slices);
+
+        DiffResult.DiffResultBuilder builder = DiffResult.builder().diff(diff);
+        Optional<RequestTuple> gained = Optional.empty();
+        Optional<RequestTuple> lost = Optional.empty();
+        for (PolicySlice slice : slices) {
+            AclPolicy oldSlice = oldSlices.get(slice);
+            AclPolicy newSlice = newSlices.get(slice);
+            if (!gained.isPresent()) {
+                SupersetResult result = supersetOf(oldSlice, newSlice, slice);
+                gained = result.counterexample();
+                result.unknownReason().ifPresent(r -> builder.unknownReason(Optional.of(r)));
+            }
+            if (!lost.isPresent()) {
+                SupersetResult result = supersetOf(newSlice, oldSlice, slice);
+                lost = result.counterexample();
+                result.unknownReason().ifPresent(r -> builder.unknownReason(Optional.of(r)));
+            }
+            if (gained.isPresent() && lost.isPresent()) {
+                break;
+            }
+        }
+        return builder.gained(gained).lost(lost).build();
+    }
+
+    /**
+     * Returns the equivalent policy without redundant entries.
+     *
+     * Entries are first removed by cheap syntactic containment (see {@link AclPolicy#minimize()}).
+     * Then each remaining entry is checked whether removing it changes the policy,
+     * only within the slices it overlaps and only if other entries share all of them.
+     */
+    public AclPolicy minimize(AclPolicy policy) {
+        List<Entry> entries = policy.minimize().entries();
+        Map<PolicySlice, List<Integer>> slices = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            for (PolicySlice slice : PolicySlice.slicesOf(entries.get(i).constraint())) {
+                slices.computeIfAbsent(slice, s -> new ArrayList<>()).add(i);
+            }
+        }
+
+        boolean[] removed = new boolean[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            Set<PolicySlice> entrySlices = PolicySlice.slicesOf(entries.get(i).constraint());
+            boolean redundant = !entrySlices.isEmpty();
+            for (PolicySlice slice : entrySlices) {
+                List<Entry> with = new ArrayList<>();
+                List<Entry> without = new ArrayList<>();
+                for (int j : slices.get(slice)) {
+                    if (!removed[j]) {
+                        with.add(entries.get(j));
+                        if (j != i) {
+                            without.add(entries.get(j));
+                        }
+                    }
+                }
+                if (without.isEmpty()) {
+                    redundant = false;
+                    break;
+                }
+                // removing Allow entry only shrinks the policy and removing Deny entry only expands it
+                final SupersetResult result;
+                if (entries.get(i).permission() == PermissionType.Allow) {
+                    result = supersetOf(new AclPolicy(without), new AclPolicy(with), slice);
+                } else {
+                    result = supersetOf(new AclPolicy(with), new AclPolicy(without), slice);
+                }
+                if (!result.isSuperset()) {
+                    redundant = false;
+                    break;
+                }
+            }
+            removed[i] = redundant;
+        }
 
-        Status status = solver.check();
-        if (status == Status.SATISFIABLE) {
-            return new SupersetResult(false, Optional.of(buildExample(solver.getModel())));
+        List<Entry> result = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (!removed[i]) {
+                result.add(entries.get(i));
+            }
         }
-        return new SupersetResult(true, Optional.empty());
+        return new AclPolicy(result);
+    }
+
+    /**
+     * Start a {@link BaseCheck} session to check many target policies against the base policy.
+     * The session is bound to this context so it must not be used after the context is closed.
+     */
+    public BaseCheck withBase(AclPolicy base) {
+        return new BaseCheck(base);
     }
 
     @Override
@@ -119,16 +529,634 @@ public class AclCheckContext implements AutoCloseable {
         context.close();
     }
 
-    private RequestTuple buildExample(Model model) {
+    /**
+     * Interrupt the check running on this context. Unlike other methods, this can be called from any thread.
+     * The interrupted check returns unknown result.
+     * The context should be closed afterwards since Z3 may keep the cancellation for subsequent checks.
+     */
+    public void interrupt() {
+        context.interrupt();
+    }
+
+    /**
+     * Returns true if the context declared {@link AclCheckOptions#maxFiniteDomains} sorts or more,
+     * so it should be replaced to release them.
+     */
+    boolean finiteDomainsExhausted() {
+        return domainId >= options.maxFiniteDomains();
+    }
+
+    /**
+     * Checks many target policies against the same base policy.
+     * {@link CheckStats} of each check covers only the target policy since the base policy is asserted once.
+     *
+     * The base policy is encoded and asserted only once, guarded by indicator literals
+     * for positive and negative occurrence.
+     * Each target is then checked inside push/pop with the corresponding indicator as the assumption,
+     * so the solver can reuse the state learned from the base policy across checks.
+     */
+    public class BaseCheck {
+        private final Solver solver;
+        private final BoolExpr positive;
+        private final BoolExpr negative;
+
+        private BaseCheck(AclPolicy base) {
+            BoolExpr encoded = encode(base);
+            solver = mkSolver();
+            positive = context.mkBoolConst("base");
+            negative = context.mkBoolConst("notBase");
+            solver.add(context.mkImplies(positive, encoded),
+                       context.mkImplies(negative, context.mkNot(encoded)));
+        }
+
+        /**
+         * Same as {@link AclCheckContext#intersection(AclPolicy, AclPolicy)} with the base policy as p1.
+         */
+        public IntersectionResult intersection(AclPolicy target) {
+            solver.push();
+            try {
+                return check(solver,
+                             target.entries().size(),
+                             () -> new BoolExpr[] { encode(target) },
+                             (status, stats) -> intersectionResult(solver, status, stats, noDomains),
+                             positive);
+            } finally {
+                solver.pop();
+            }
+        }
+
+        /**
+         * Same as {@link AclCheckContext#supersetOf(AclPolicy, AclPolicy)} with the base policy as p1.
+         */
+        public SupersetResult supersetOf(AclPolicy target) {
+            solver.push();
+            try {
+                return check(solver,
+                             target.entries().size(),
+                             () -> new BoolExpr[] { encode(target) },
+                             (status, stats) -> supersetResult(solver, status, stats, noDomains),
+                             negative);
+            } finally {
+                solver.pop();
+            }
+        }
+
+        /**
+         * Check intersection against each target. Results are in the same order as targets.
+         */
+        public List<IntersectionResult> intersection(List<AclPolicy> targets) {
+            List<IntersectionResult> results = new ArrayList<>(targets.size());
+            for (AclPolicy target : targets) {
+                results.add(intersection(target));
+            }
+            return results;
+        }
+
+        /**
+         * Check superset against each target. Results are in the same order as targets.
+         */
+        public List<SupersetResult> supersetOf(List<AclPolicy> targets) {
+            List<SupersetResult> results = new ArrayList<>(targets.size());
+            for (AclPolicy target : targets) {
+                results.add(supersetOf(target));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Enumerates models of the solver incrementally.
+     * After each model, a clause which excludes the values of {@link EnumerationOptions#distinctBy()}
+     * is added to the same solver, so learned state is kept across checks.
+     */
+    private class ExampleIterator implements Iterator<RequestTuple> {
+        private final Solver solver;
+        private final EnumerationOptions enumerationOptions;
+        private final long deadlineNanos;
+        private int count;
+        private boolean done;
+        private RequestTuple next;
+
+        private ExampleIterator(Solver solver, EnumerationOptions enumerationOptions) {
+            this.solver = solver;
+            this.enumerationOptions = enumerationOptions;
+            deadlineNanos = System.nanoTime() + enumerationOptions.timeBudgetMillis() * 1_000_000L;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (done || count >= enumerationOptions.limit()) {
+                return false;
+            }
+            if (enumerationOptions.timeBudgetMillis() > 0) {
+                long remainingMillis = (deadlineNanos - System.nanoTime()) / 1_000_000L;
+                if (remainingMillis <= 0) {
+                    done = true;
+                    return false;
+                }
+                if (options.timeoutMillis() > 0) {
+                    remainingMillis = Math.min(remainingMillis, options.timeoutMillis());
+                }
+                Params params = context.mkParams();
+                params.add("timeout", (int) Math.min(remainingMillis, Integer.MAX_VALUE));
+                solver.setParameters(params);
+            }
+            if (solver.check() != Status.SATISFIABLE) {
+                done = true;
+                return false;
+            }
+            Model model = solver.getModel();
+            next = buildExample(model, noDomains);
+            solver.add(context.mkNot(context.mkAnd(
+                    enumerationOptions.distinctBy()
+                                      .stream()
+                                      .map(field -> blockingEq(model, field))
+                                      .toArray(BoolExpr[]::new))));
+            count++;
+            return true;
+        }
+
+        @Override
+        public RequestTuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RequestTuple result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    private Stream<RequestTuple> enumerate(Solver solver, EnumerationOptions enumerationOptions) {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(
+                        new ExampleIterator(solver, enumerationOptions),
+                        Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT),
+                false);
+    }
+
+    private BoolExpr blockingEq(Model model, Field field) {
+        switch (field) {
+            case UserPrincipal:
+                return blockingEq(model, userPrincipal);
+            case Host:
+                return blockingEq(model, host);
+            case Operation:
+                return blockingEq(model, aclOperation);
+            case ResourceType:
+                return blockingEq(model, resourceType);
+            case ResourceName:
+                return blockingEq(model, resourceName);
+        }
+        throw new RuntimeException("Never happen");
+    }
+
+    private <R extends Sort> BoolExpr blockingEq(Model model, Expr<R> expr) {
+        return context.mkEq(expr, model.eval(expr, true));
+    }
+
+    private IntersectionResult explainedIntersection(AclPolicy p1, AclPolicy p2) {
+        Solver solver = mkSolver();
+        Domains domains = domains(p1, p2);
+        Tracking tracking = new Tracking(p1, PermissionType.Deny, p2, PermissionType.Deny);
+        return check(solver,
+                     entries(p1, p2),
+                     () -> new BoolExpr[] { tracking.encode(p1, 0, domains), tracking.encode(p2, 1, domains) },
+                     (status, stats) -> {
+                         IntersectionResult result = intersectionResult(solver, status, stats, domains);
+                         if (status == Status.UNSATISFIABLE) {
+                             result = result.toBuilder()
+                                            .explanation(Optional.of(tracking.explain(solver)))
+                                            .build();
+                         }
+                         return result;
+                     },
+                     tracking.indicators());
+    }
+
+    private SupersetResult explainedSupersetOf(AclPolicy p1, AclPolicy p2) {
+        Solver solver = mkSolver();
+        Domains domains = domains(p1, p2);
+        Tracking tracking = new Tracking(p1, PermissionType.Allow, p2, PermissionType.Deny);
+        return check(solver,
+                     entries(p1, p2),
+                     () -> new BoolExpr[] {
+                             context.mkNot(tracking.encode(p1, 0, domains)), tracking.encode(p2, 1, domains) },
+                     (status, stats) -> {
+                         SupersetResult result = supersetResult(solver, status, stats, domains);
+                         if (status == Status.UNSATISFIABLE) {
+                             result = result.toBuilder()
+                                            .explanation(Optional.of(tracking.explain(solver)))
+                                            .build();
+                         }
+                         return result;
+                     },
+                     tracking.indicators());
+    }
+
+    /**
+     * Tracks entries of p1 and p2 by indicator literals, which are passed to the solver as assumptions.
+     *
+     * Each tracked entry is guarded by its indicator so that the entry is dropped when the indicator is false.
+     * Only entries whose removal relaxes the formula are tracked, so the unsat core over the indicators
+     * is the set of entries sufficient for the unsat result.
+     */
+    private final class Tracking {
+        // indicators.get(0) for p1 and indicators.get(1) for p2. null for untracked entries
+        private final List<BoolExpr[]> indicators = new ArrayList<>(2);
+        private final Map<String, Integer> p1Indexes = new HashMap<>();
+        private final Map<String, Integer> p2Indexes = new HashMap<>();
+
+        private Tracking(AclPolicy p1, PermissionType tracked1, AclPolicy p2, PermissionType tracked2) {
+            indicators.add(mkIndicators(p1, tracked1, "p1_", p1Indexes));
+            indicators.add(mkIndicators(p2, tracked2, "p2_", p2Indexes));
+        }
+
+        private BoolExpr[] mkIndicators(
+                AclPolicy policy, PermissionType tracked, String prefix, Map<String, Integer> indexes) {
+            BoolExpr[] result = new BoolExpr[policy.entries().size()];
+            for (int i = 0; i < result.length; i++) {
+                if (policy.entries().get(i).permission() == tracked) {
+                    String name = prefix + i;
+                    result[i] = context.mkBoolConst(name);
+                    indexes.put(name, i);
+                }
+            }
+            return result;
+        }
+
+        BoolExpr[] indicators() {
+            return indicators.stream()
+                             .flatMap(Arrays::stream)
+                             .filter(Objects::nonNull)
+                             .toArray(BoolExpr[]::new);
+        }
+
+        /**
+         * Same as {@link AclCheckContext#encode(AclPolicy, Domains)} except tracked entries are guarded.
+         */
+        BoolExpr encode(AclPolicy policy, int side, Domains domains) {
+            BoolExpr[] guards = indicators.get(side);
+            List<BoolExpr> allow = new ArrayList<>();
+            List<BoolExpr> deny = new ArrayList<>();
+            for (int i = 0; i < guards.length; i++) {
+                Entry entry = policy.entries().get(i);
+                BoolExpr expr = AclCheckContext.this.encode(entry.constraint(), domains);
+                if (guards[i] != null) {
+                    expr = context.mkAnd(guards[i], expr);
+                }
+                switch (entry.permission()) {
+                    case Allow:
+                        allow.add(expr);
+                        break;
+                    case Deny:
+                        deny.add(context.mkNot(expr));
+                        break;
+                }
+            }
+            return context.mkAnd(
+                    context.mkOr(allow.toArray(new BoolExpr[0])),
+                    context.mkAnd(deny.toArray(new BoolExpr[0])));
+        }
+
+        /**
+         * Minimize the unsat core by deletion: each indicator is dropped if the rest is still unsat.
+         * The core returned by each check shrinks the candidates further, so the number of checks is
+         * bounded by the size of the initial core rather than the number of entries.
+         * Indicators whose removal leads to unknown are kept.
+         */
+        Explanation explain(Solver solver) {
+            List<BoolExpr> core = new ArrayList<>(Arrays.asList(solver.getUnsatCore()));
+            int i = 0;
+            while (i < core.size()) {
+                List<BoolExpr> candidate = new ArrayList<>(core);
+                candidate.remove(i);
+                if (solver.check(candidate.toArray(new BoolExpr[0])) == Status.UNSATISFIABLE) {
+                    Set<String> names = new HashSet<>();
+                    for (BoolExpr literal : solver.getUnsatCore()) {
+                        names.add(literal.toString());
+                    }
+                    // literals before i are necessary so they are always in the new core
+                    core = candidate.stream()
+                                    .filter(literal -> names.contains(literal.toString()))
+                                    .collect(Collectors.toList());
+                } else {
+                    i++;
+                }
+            }
+
+            List<Integer> p1Entries = new ArrayList<>();
+            List<Integer> p2Entries = new ArrayList<>();
+            for (BoolExpr literal : core) {
+                String name = literal.toString();
+                if (p1Indexes.containsKey(name)) {
+                    p1Entries.add(p1Indexes.get(name));
+                } else if (p2Indexes.containsKey(name)) {
+                    p2Entries.add(p2Indexes.get(name));
+                }
+            }
+            Collections.sort(p1Entries);
+            Collections.sort(p2Entries);
+            return new Explanation(p1Entries, p2Entries);
+        }
+    }
+
+    /**
+     * String fields encoded over finite domains in a check.
+     */
+    private static final class Domains {
+        private final Map<Expr<SeqSort<CharSort>>, FiniteDomain> fields = new IdentityHashMap<>();
+        private final Map<AclConstraint, BoolExpr> constraintCache = new HashMap<>();
+
+        boolean isEmpty() {
+            return fields.isEmpty();
+        }
+
+        String decode(Expr<SeqSort<CharSort>> variable, String value) {
+            FiniteDomain domain = fields.get(variable);
+            return domain == null ? value : domain.decode(value);
+        }
+    }
+
+    /**
+     * Encodes a string field, which is compared only with literals by equality, into an enum sort
+     * of the literals and an extra value standing for any other string.
+     * Since all other strings satisfy exactly the same conditions, the check is equivalent.
+     * Declared sorts are never released by the context, hence domains are shared through the cache.
+     */
+    private final class FiniteDomain {
+        private final Expr<EnumSort<Object>> variable;
+        private final Map<String, Expr<EnumSort<Object>>> consts = new HashMap<>();
+        private final Map<String, String> values = new HashMap<>();
+
+        private FiniteDomain(String name, Set<String> literals) {
+            String sortName = name + '_' + domainId++;
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < literals.size(); i++) {
+                names.add(sortName + '_' + i);
+            }
+            names.add(sortName + "_other");
+            EnumSort<Object> sort = context.mkEnumSort(sortName, names.toArray(new String[0]));
+            // same name as the string variable so that the model is read by buildExample
+            variable = context.mkConst(name, sort);
+
+            int i = 0;
+            for (String literal : literals) {
+                consts.put(literal, sort.getConst(i));
+                values.put(names.get(i), literal);
+                i++;
+            }
+            String other = "other";
+            for (int suffix = 1; literals.contains(other); suffix++) {
+                other = "other-" + suffix;
+            }
+            values.put(sortName + "_other", other);
+        }
+
+        BoolExpr eq(String literal) {
+            return context.mkEq(variable, consts.get(literal));
+        }
+
+        String decode(String value) {
+            return values.getOrDefault(value, value);
+        }
+    }
+
+    /**
+     * Determine string fields which can be encoded over finite domains.
+     * Fields compared with prefix, suffix or substring in any entry keep the string encoding.
+     */
+    private Domains domains(AclPolicy... policies) {
+        if (!options.finiteDomainEncoding()) {
+            return noDomains;
+        }
+        Domains domains = new Domains();
+        addDomain(domains, USER_PRINCIPAL, userPrincipal, policies, AclConstraint::userPrincipal);
+        addDomain(domains, HOST, host, policies, AclConstraint::host);
+        addDomain(domains, RESOURCE_NAME, resourceName, policies, c -> c.resource().resourceName());
+        return domains;
+    }
+
+    private void addDomain(Domains domains,
+                           String name,
+                           Expr<SeqSort<CharSort>> variable,
+                           AclPolicy[] policies,
+                           Function<AclConstraint, StringCondition> field) {
+        Set<String> literals = new TreeSet<>();
+        for (AclPolicy policy : policies) {
+            for (Entry entry : policy.entries()) {
+                StringCondition condition = field.apply(entry.constraint());
+                if (condition.value().contains(AclConstraint.WILDCARD)) {
+                    continue;
+                }
+                if (condition.op() != StringOperator.In) {
+                    return;
+                }
+                literals.addAll(condition.value());
+            }
+        }
+        if (!literals.isEmpty()) {
+            List<String> key = new ArrayList<>(literals.size() + 1);
+            key.add(name);
+            key.addAll(literals);
+            FiniteDomain domain = domainCache.get(key);
+            if (domain == null) {
+                domain = new FiniteDomain(name, literals);
+                domainCache.put(key, domain);
+            }
+            domains.fields.put(variable, domain);
+        }
+    }
+
+    private Optional<Tactic> mkTactic(List<String> names) {
+        if (names.isEmpty()) {
+            return Optional.empty();
+        }
+        Tactic[] tactics = names.stream().map(context::mkTactic).toArray(Tactic[]::new);
+        if (tactics.length == 1) {
+            return Optional.of(tactics[0]);
+        }
+        return Optional.of(context.andThen(
+                tactics[0], tactics[1], Arrays.copyOfRange(tactics, 2, tactics.length)));
+    }
+
+    private Solver mkSolver() {
+        Solver solver = tactic.isPresent() ? context.mkSolver(tactic.get()) : context.mkSolver();
+        Params params = context.mkParams();
+        if (options.timeoutMillis() > 0) {
+            params.add("timeout", options.timeoutMillis());
+        }
+        if (options.resourceLimit() > 0) {
+            params.add("rlimit", options.resourceLimit());
+        }
+        if (options.stringSolver() != StringSolver.Seq) {
+            params.add("smt.string_solver", options.stringSolver().paramValue);
+        }
+        solver.setParameters(params);
+        return solver;
+    }
+
+    private boolean syntacticallyDecidable(AclPolicy p1, AclPolicy p2) {
+        return options.syntacticEngine() &&
+               SyntacticChecker.supports(p1) &&
+               SyntacticChecker.supports(p2);
+    }
+
+    private IntersectionResult syntacticIntersection(
+            AclPolicy p1, AclPolicy p2, Supplier<Optional<RequestTuple>> search) {
+        long start = System.nanoTime();
+        Optional<RequestTuple> example = search.get();
+        return IntersectionResult.builder()
+                                 .intersects(example.isPresent())
+                                 .example(example)
+                                 .engine(Engine.Syntactic)
+                                 .stats(syntacticStats(entries(p1, p2), System.nanoTime() - start))
+                                 .build();
+    }
+
+    private SupersetResult syntacticSuperset(
+            AclPolicy p1, AclPolicy p2, Supplier<Optional<RequestTuple>> search) {
+        long start = System.nanoTime();
+        Optional<RequestTuple> counterexample = search.get();
+        return SupersetResult.builder()
+                             .isSuperset(!counterexample.isPresent())
+                             .counterexample(counterexample)
+                             .engine(Engine.Syntactic)
+                             .stats(syntacticStats(entries(p1, p2), System.nanoTime() - start))
+                             .build();
+    }
+
+    private Optional<CheckStats> syntacticStats(int entries, long solveNanos) {
+        if (!options.collectStats()) {
+            return Optional.empty();
+        }
+        return Optional.of(CheckStats.builder()
+                                     .solveNanos(solveNanos)
+                                     .entries(entries)
+                                     .build());
+    }
+
+    /**
+     * Assert the encoded formulas and check the solver, measuring each phase
+     * if {@link AclCheckOptions#collectStats()} is enabled.
+     */
+    private <T> T check(Solver solver,
+                        int entries,
+                        Supplier<BoolExpr[]> encoder,
+                        BiFunction<Status, Optional<CheckStats>, T> resultBuilder,
+                        BoolExpr... assumptions) {
+        long start = System.nanoTime();
+        BoolExpr[] assertions = encoder.get();
+        long encoded = System.nanoTime();
+        solver.add(assertions);
+        Status status = solver.check(assumptions);
+        long solved = System.nanoTime();
+
+        Optional<CheckStats> stats = Optional.empty();
+        if (options.collectStats()) {
+            stats = Optional.of(CheckStats.builder()
+                                          .encodeNanos(encoded - start)
+                                          .solveNanos(solved - encoded)
+                                          .entries(entries)
+                                          .astNodes(countNodes(assertions))
+                                          .solverStatistics(solverStatistics(solver))
+                                          .build());
+        }
+        return resultBuilder.apply(status, stats);
+    }
+
+    private SymmetryReduction symmetryReduction(AclPolicy p1, AclPolicy p2) {
+        return options.symmetryReduction() ? SymmetryReduction.of(p1, p2) : SymmetryReduction.identity();
+    }
+
+    private static int entries(AclPolicy p1, AclPolicy p2) {
+        return p1.entries().size() + p2.entries().size();
+    }
+
+    /**
+     * Count distinct nodes in the expression DAG.
+     */
+    private static int countNodes(Expr<?>[] exprs) {
+        Set<Integer> visited = new HashSet<>();
+        Deque<Expr<?>> stack = new ArrayDeque<>(Arrays.asList(exprs));
+        while (!stack.isEmpty()) {
+            Expr<?> expr = stack.pop();
+            if (visited.add(expr.getId()) && expr.isApp()) {
+                for (Expr<?> arg : expr.getArgs()) {
+                    stack.push(arg);
+                }
+            }
+        }
+        return visited.size();
+    }
+
+    private static Map<String, Number> solverStatistics(Solver solver) {
+        Map<String, Number> result = new TreeMap<>();
+        for (Statistics.Entry entry : solver.getStatistics().getEntries()) {
+            if (entry.isUInt()) {
+                result.put(entry.Key, entry.getUIntValue());
+            } else if (entry.isDouble()) {
+                result.put(entry.Key, entry.getDoubleValue());
+            }
+        }
+        return result;
+    }
+
+    private IntersectionResult intersectionResult(
+            Solver solver, Status status, Optional<CheckStats> stats, Domains domains) {
+        switch (status) {
+            case SATISFIABLE:
+                return IntersectionResult.builder()
+                                         .intersects(true)
+                                         .example(Optional.of(buildExample(solver.getModel(), domains)))
+                                         .stats(stats)
+                                         .build();
+            case UNKNOWN:
+                return IntersectionResult.builder()
+                                         .intersects(false)
+                                         .unknownReason(Optional.of(solver.getReasonUnknown()))
+                                         .stats(stats)
+                                         .build();
+            default:
+                return IntersectionResult.builder().intersects(false).stats(stats).build();
+        }
+    }
+
+    private SupersetResult supersetResult(
+            Solver solver, Status status, Optional<CheckStats> stats, Domains domains) {
+        switch (status) {
+            case SATISFIABLE:
+                return SupersetResult.builder()
+                                     .isSuperset(false)
+                                     .counterexample(Optional.of(buildExample(solver.getModel(), domains)))
+                                     .stats(stats)
+                                     .build();
+            case UNKNOWN:
+                return SupersetResult.builder()
+                                     .isSuperset(false)
+                                     .unknownReason(Optional.of(solver.getReasonUnknown()))
+                                     .stats(stats)
+                                     .build();
+            default:
+                return SupersetResult.builder().isSuperset(true).stats(stats).build();
+        }
+    }
+
+    private RequestTuple buildExample(Model model, Domains domains) {
         RequestTupleBuilder builder = RequestTuple.builder();
         for (FuncDecl<?> decl : model.getConstDecls()) {
-            String str = model.getConstInterp(decl).toString();
+            Expr<?> interp = model.getConstInterp(decl);
+            // toString() of a string constant is quoted and escaped in SMT-LIB form
+            String str = interp instanceof SeqExpr ? ((SeqExpr<?>) interp).getString() : interp.toString();
             switch (decl.getName().toString()) {
                 case USER_PRINCIPAL:
-                    builder.userPrincipal(str);
+                    builder.userPrincipal(domains.decode(userPrincipal, str));
                     break;
                 case HOST:
-                    builder.host(str);
+                    builder.host(domains.decode(host, str));
                     break;
                 case OPERATION:
                     builder.operation(AclOperation.fromString(str));
@@ -137,7 +1165,7 @@ public class AclCheckContext implements AutoCloseable {
                     builder.resourceType(ResourceType.fromString(str));
                     break;
                 case RESOURCE_NAME:
-                    builder.resourceName(str);
+                    builder.resourceName(domains.decode(resourceName, str));
                     break;
             }
         }
@@ -145,16 +1173,20 @@ public class AclCheckContext implements AutoCloseable {
     }
 
     private BoolExpr encode(AclPolicy policy) {
+        return encode(policy, noDomains);
+    }
+
+    private BoolExpr encode(AclPolicy policy, Domains domains) {
         List<BoolExpr> allow = new ArrayList<>();
         List<BoolExpr> deny = new ArrayList<>();
 
         for (AclPolicy.Entry entry : policy.entries()) {
             switch (entry.permission()) {
                 case Allow:
-                    allow.add(encode(entry.constraint()));
+                    allow.add(encode(entry.constraint(), domains));
                     break;
                 case Deny:
-                    deny.add(context.mkNot(encode(entry.constraint())));
+                    deny.add(context.mkNot(encode(entry.constraint(), domains)));
                     break;
             }
         }
@@ -164,11 +1196,28 @@ public class AclCheckContext implements AutoCloseable {
                 context.mkAnd(deny.stream().toArray(BoolExpr[]::new)));
     }
 
-    private BoolExpr encode(AclConstraint constraint) {
-        BoolExpr userPrincipalExpr = encode(userPrincipal, constraint.userPrincipal());
-        BoolExpr hostExpr = encode(host, constraint.host());
+    private BoolExpr encode(PolicySlice slice) {
+        return context.mkAnd(
+                context.mkEq(resourceType, resourceTypeSort.getConst(slice.resourceType())),
+                context.mkEq(aclOperation, aclOperationSort.getConst(slice.operation())));
+    }
+
+    private BoolExpr encode(AclConstraint constraint, Domains domains) {
+        // encodings over finite domains are valid only within the check
+        Map<AclConstraint, BoolExpr> cache = domains.isEmpty() ? constraintCache : domains.constraintCache;
+        BoolExpr cached = cache.get(constraint);
+        if (cached == null) {
+            cached = encodeUncached(constraint, domains);
+            cache.put(constraint, cached);
+        }
+        return cached;
+    }
+
+    private BoolExpr encodeUncached(AclConstraint constraint, Domains domains) {
+        BoolExpr userPrincipalExpr = encode(userPrincipal, constraint.userPrincipal(), domains);
+        BoolExpr hostExpr = encode(host, constraint.host(), domains);
         BoolExpr operationExpr = encode(constraint.operation());
-        BoolExpr resourceExpr = encode(constraint.resource());
+        BoolExpr resourceExpr = encode(constraint.resource(), domains);
 
         return context.mkAnd(
                 userPrincipalExpr,
@@ -186,19 +1235,55 @@ public class AclCheckContext implements AutoCloseable {
         }
     }
 
-    private BoolExpr encode(ResourceCondition condition) {
+    private BoolExpr encode(ResourceCondition condition, Domains domains) {
         return context.mkAnd(
                 context.mkEq(resourceType, resourceTypeSort.getConst(condition.resourceType())),
-                encode(resourceName, condition.resourceName()));
+                encode(resourceName, condition.resourceName(), domains));
+    }
+
+    private BoolExpr encode(
+            Expr<SeqSort<CharSort>> expr,
+            StringCondition condition,
+            Domains domains) {
+        FiniteDomain domain = domains.fields.get(expr);
+        if (domain == null) {
+            return encode(expr, condition);
+        }
+        if (condition.value().contains(AclConstraint.WILDCARD)) {
+            return condition.negate() ? context.mkFalse() : context.mkTrue();
+        }
+        // only In conditions are encoded over finite domains
+        BoolExpr in = context.mkOr(condition.value()
+                                            .stream()
+                                            .map(domain::eq)
+                                            .toArray(BoolExpr[]::new));
+        return condition.negate() ? context.mkNot(in) : in;
     }
 
     private BoolExpr encode(
             Expr<SeqSort<CharSort>> expr,
             StringCondition condition) {
+        LruCache<StringCondition, BoolExpr> cache = stringConditionCaches.get(expr);
+        BoolExpr cached = cache.get(condition);
+        if (cached == null) {
+            cached = encodeUncached(expr, condition);
+            cache.put(condition, cached);
+        }
+        return cached;
+    }
+
+    private BoolExpr encodeUncached(
+            Expr<SeqSort<CharSort>> expr,
+            StringCondition condition) {
         if (condition.value().contains(AclConstraint.WILDCARD)) {
             return condition.negate() ? context.mkFalse() : context.mkTrue();
         }
 
+        if (options.regexEncoding() && condition.value().size() > 1 && condition.op() != StringOperator.In) {
+            BoolExpr in = context.mkInRe(expr, regex(condition));
+            return condition.negate() ? context.mkNot(in) : in;
+        }
+
         final Function<Stream<BoolExpr>, BoolExpr> combiner;
         if (condition.negate()) {
             combiner = exprs -> context.mkAnd(
@@ -232,4 +1317,16 @@ public class AclCheckContext implements AutoCloseable {
         }
         throw new RuntimeException("Never happen");
     }
+
+    private ReExpr<SeqSort<CharSort>> regex(StringCondition condition) {
+        switch (condition.op()) {
+            case StartWith:
+                return trieRegex.startWith(condition.value());
+            case EndWith:
+                return trieRegex.endWith(condition.value());
+            case Contain:
+                return trieRegex.contain(condition.value());
+        }
+        throw new IllegalArgumentException("Not supported: " + condition.op());
+    }
 }
@@ -0,0 +1,354 @@
+package com.mayreh.kalc;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.mayreh.kalc.AclCheckContext.IntersectionResult;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.AclPolicy.Entry.PermissionType;
+
+/**
+ * Thread-safe pool of {@link AclCheckContext}s.
+ *
+ * Since {@link AclCheckContext} must not be shared across threads, the pool owns fixed number of
+ * contexts which are created eagerly and handed out exclusively per check.
+ * Independent checks can be run concurrently up to the pool size.
+ *
+ * {@link #intersection(AclPolicy, AclPolicy)} splits policies into {@link PolicySlice}s and
+ * {@link #supersetOf(AclPolicy, AclPolicy)} splits into Allow entries of p2, and solve them
+ * in parallel on the pooled contexts.
+ * Sub-checks which are no longer needed are interrupted, and their contexts are replaced with new ones.
+ */
+public class AclCheckContextPool implements AutoCloseable {
+    private static final Duration DEFAULT_ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+
+    private final BlockingQueue<AclCheckContext> idle;
+    private final ExecutorService executor;
+    private final AclCheckOptions options;
+    private final Duration acquireTimeout;
+    private boolean closed;
+
+    public AclCheckContextPool(int size) {
+        this(size, AclCheckOptions.defaults(), DEFAULT_ACQUIRE_TIMEOUT);
+    }
+
+    public AclCheckContextPool(int size, AclCheckOptions options, Duration acquireTimeout) {
+        Utils.require(size, s -> s > 0, "size must be positive");
+        this.options = options;
+        this.acquireTimeout = acquireTimeout;
+
+        List<AclCheckContext> contexts = new ArrayList<>(size);
+        try {
+            for (int i = 0; i < size; i++) {
+                contexts.add(new AclCheckContext(options));
+            }
+        } catch (RuntimeException e) {
+            contexts.forEach(AclCheckContext::close);
+            throw e;
+        }
+        idle = new ArrayBlockingQueue<>(size, false, contexts);
+
+        executor = Utils.daemonThreadPool("kalc-check", size);
+    }
+
+    /**
+     * Run the operation with a context exclusively acquired from the pool.
+     * The context must not be leaked out of the operation.
+     *
+     * @throws IllegalStateException if the pool is closed or no context became available within the timeout
+     */
+    public <T> T execute(Function<AclCheckContext, T> operation) {
+        AclCheckContext ctx = acquire();
+        try {
+            return operation.apply(ctx);
+        } finally {
+            release(ctx);
+        }
+    }
+
+    /**
+     * Same as {@link #execute(Function)}, but the operation is run asynchronously on a thread of the pool.
+     * Unlike interrupting the thread, cancelling the returned future with interruption stops the solver
+     * running on the context, and the context is replaced with a new one.
+     */
+    public <T> Future<T> submit(Function<AclCheckContext, T> operation) {
+        Task<T> task = new Task<>(operation);
+        FutureTask<T> future = new FutureTask<T>(task) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled && mayInterruptIfRunning) {
+                    task.cancel();
+                }
+                return cancelled;
+            }
+        };
+        executor.execute(future);
+        return future;
+    }
+
+    /**
+     * Same as {@link AclCheckContext#intersection(AclPolicy, AclPolicy)}, but solved per slice in parallel.
+     * Slices where either policy has no Allow entry are skipped, and remaining slices are
+     * cancelled as soon as one of them intersects.
+     */
+    public IntersectionResult intersection(AclPolicy p1, AclPolicy p2) {
+        Map<PolicySlice, AclPolicy> slices1 = PolicySlice.partition(p1);
+        Map<PolicySlice, AclPolicy> slices2 = PolicySlice.partition(p2);
+
+        List<Function<AclCheckContext, IntersectionResult>> checks = new ArrayList<>();
+        slices2.forEach((slice, sub2) -> {
+            AclPolicy sub1 = slices1.get(slice);
+            if (sub1 != null && hasAllow(sub1) && hasAllow(sub2)) {
+                checks.add(ctx -> ctx.intersection(sub1, sub2, slice));
+            }
+        });
+        return findFirst(checks, IntersectionResult::intersects, IntersectionResult::unknown)
+                .orElseGet(() -> IntersectionResult.builder().intersects(false).build());
+    }
+
+    /**
+     * Same as {@link AclCheckContext#supersetOf(AclPolicy, AclPolicy)}, but solved per Allow entry of p2 in parallel.
+     *
+     * p1 is the superset of p2 iff every Allow entry of p2 minus Deny entries of p2 is covered by p1.
+     * Each sub-check consists of the Allow entry, Deny entries of p2 and entries of p1 which overlap
+     * the slices of the Allow entry, and remaining sub-checks are cancelled as soon as a counterexample
+     * is found in one of them. The index of the uncovered entry is reported by {@link SupersetResult#uncoveredEntry()}.
+     */
+    public SupersetResult supersetOf(AclPolicy p1, AclPolicy p2) {
+        Map<PolicySlice, AclPolicy> slices1 = PolicySlice.partition(p1);
+        Map<PolicySlice, AclPolicy> slices2 = PolicySlice.partition(p2);
+
+        // duplicated entries are checked only once
+        Map<Entry, Integer> targets = new LinkedHashMap<>();
+        for (int i = 0; i < p2.entries().size(); i++) {
+            Entry entry = p2.entries().get(i);
+            if (entry.permission() == PermissionType.Allow) {
+                targets.putIfAbsent(entry, i);
+            }
+        }
+
+        List<Function<AclCheckContext, SupersetResult>> checks = new ArrayList<>();
+        targets.forEach((target, index) -> {
+            Set<PolicySlice> slices = PolicySlice.slicesOf(target.constraint());
+            AclPolicy sub1 = new AclPolicy(overlapping(slices1, slices, e -> true));
+            List<Entry> entries2 = new ArrayList<>();
+            entries2.add(target);
+            entries2.addAll(overlapping(slices2, slices, e -> e.permission() == PermissionType.Deny));
+            AclPolicy sub2 = new AclPolicy(entries2);
+            checks.add(ctx -> {
+                SupersetResult result = ctx.supersetOf(sub1, sub2);
+                if (result.isSuperset() || result.unknown()) {
+                    return result;
+                }
+                return result.toBuilder().uncoveredEntry(Optional.of(index)).build();
+            });
+        });
+        return findFirst(checks, r -> !r.isSuperset() && !r.unknown(), SupersetResult::unknown)
+                .orElseGet(() -> SupersetResult.builder().isSuperset(true).build());
+    }
+
+    /**
+     * Close all idle contexts.
+     * Contexts in use are closed when they are released.
+     */
+    @Override
+    public void close() {
+        List<AclCheckContext> contexts = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            idle.drainTo(contexts);
+        }
+        executor.shutdownNow();
+        contexts.forEach(AclCheckContext::close);
+    }
+
+    /**
+     * Run the checks in parallel on pooled contexts and returns the first result which satisfies the predicate.
+     * Checks which are not completed yet are cancelled then, interrupting the ones running on a context.
+     * If no result satisfies the predicate, returns the inconclusive one if any.
+     */
+    private <T> Optional<T> findFirst(List<Function<AclCheckContext, T>> checks,
+                                      Predicate<T> predicate,
+                                      Predicate<T> inconclusive) {
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        List<Task<T>> tasks = new ArrayList<>(checks.size());
+        List<Future<T>> futures = new ArrayList<>(checks.size());
+        try {
+            for (Function<AclCheckContext, T> check : checks) {
+                Task<T> task = new Task<>(check);
+                tasks.add(task);
+                futures.add(completionService.submit(task));
+            }
+            Optional<T> inconclusiveResult = Optional.empty();
+            for (int i = 0; i < futures.size(); i++) {
+                T result = completionService.take().get();
+                if (predicate.test(result)) {
+                    return Optional.of(result);
+                }
+                if (!inconclusiveResult.isPresent() && inconclusive.test(result)) {
+                    inconclusiveResult = Optional.of(result);
+                }
+            }
+            return inconclusiveResult;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            // cancelling the future doesn't stop the native solver, so running checks are interrupted as well
+            futures.forEach(f -> f.cancel(true));
+            tasks.forEach(Task::cancel);
+        }
+    }
+
+    /**
+     * A check which tracks the context it runs on, so that it can be interrupted.
+     */
+    private final class Task<T> implements Callable<T> {
+        private final Function<AclCheckContext, T> check;
+
+        // guarded by this
+        private AclCheckContext running;
+        private boolean cancelled;
+        private boolean interrupted;
+
+        Task(Function<AclCheckContext, T> check) {
+            this.check = check;
+        }
+
+        @Override
+        public T call() {
+            AclCheckContext ctx = acquire();
+            synchronized (this) {
+                if (cancelled) {
+                    release(ctx);
+                    // the result is never taken as the future is already cancelled
+                    return null;
+                }
+                running = ctx;
+            }
+            try {
+                return check.apply(ctx);
+            } finally {
+                final boolean wasInterrupted;
+                synchronized (this) {
+                    running = null;
+                    wasInterrupted = interrupted;
+                }
+                if (wasInterrupted) {
+                    recycle(ctx);
+                } else {
+                    release(ctx);
+                }
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (running != null && !interrupted) {
+                interrupted = true;
+                running.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Collect entries of the partitioned policy which overlap any of the slices, without duplicates.
+     */
+    private static List<Entry> overlapping(Map<PolicySlice, AclPolicy> partition,
+                                           Set<PolicySlice> slices,
+                                           Predicate<Entry> filter) {
+        Set<Entry> entries = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<Entry> result = new ArrayList<>();
+        for (PolicySlice slice : slices) {
+            AclPolicy policy = partition.get(slice);
+            if (policy == null) {
+                continue;
+            }
+            for (Entry entry : policy.entries()) {
+                if (filter.test(entry) && entries.add(entry)) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasAllow(AclPolicy policy) {
+        return policy.entries()
+                     .stream()
+                     .anyMatch(e -> e.permission() == PermissionType.Allow);
+    }
+
+    private AclCheckContext acquire() {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("pool is already closed");
+            }
+        }
+        final AclCheckContext ctx;
+        try {
+            ctx = idle.poll(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (ctx == null) {
+            throw new IllegalStateException("Timed out to acquire a context in " + acquireTimeout);
+        }
+        return ctx;
+    }
+
+    /**
+     * Replace the interrupted context with a new one, since Z3 may keep the cancellation for subsequent checks.
+     */
+    private void recycle(AclCheckContext ctx) {
+        ctx.close();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+        }
+        release(new AclCheckContext(options));
+    }
+
+    private void release(AclCheckContext ctx) {
+        if (ctx.finiteDomainsExhausted()) {
+            // declared sorts are released only with the Z3 context
+            recycle(ctx);
+            return;
+        }
+        synchronized (this) {
+            if (!closed) {
+                idle.add(ctx);
+                return;
+            }
+        }
+        ctx.close();
+    }
+}
@@ -0,0 +1,124 @@
+package com.mayreh.kalc;
+
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Options to tune {@link AclCheckContext}.
+ */
+@Value
+@Builder(toBuilder = true)
+@Accessors(fluent = true)
+public class AclCheckOptions {
+    /**
+     * Max number of encoded conditions to be cached per context.
+     * Encoded expressions are reused while the same {@link AclConstraint}s are checked repeatedly.
+     */
+    @Builder.Default
+    int encodingCacheSize = 10000;
+
+    /**
+     * Decide checks without the solver when both policies consist only of literal and prefix conditions.
+     * The solver is used otherwise.
+     */
+    @Builder.Default
+    boolean syntacticEngine = true;
+
+    /**
+     * Timeout of the solver per check in milliseconds. 0 means no timeout.
+     * Checks which hit the timeout return unknown result.
+     */
+    @Builder.Default
+    int timeoutMillis = 0;
+
+    /**
+     * Resource limit of the solver per check, which bounds the work deterministically unlike the timeout.
+     * 0 means unlimited.
+     */
+    @Builder.Default
+    int resourceLimit = 0;
+
+    /**
+     * Encode string fields compared only with literals (i.e. In conditions) over finite domains
+     * instead of the string theory, which is much faster to solve.
+     * Applies to {@link AclCheckContext#intersection} and {@link AclCheckContext#supersetOf}.
+     *
+     * An enum sort is declared per distinct set of literals, which Z3 releases only when the context is closed.
+     * Hence long-lived contexts should be used through {@link AclCheckContextPool} or {@link PortfolioChecker},
+     * which re-create contexts after {@link #maxFiniteDomains} sorts are declared.
+     */
+    @Builder.Default
+    boolean finiteDomainEncoding = false;
+
+    /**
+     * Max number of finite-domain sorts declared in a context
+     * before {@link AclCheckContextPool} and {@link PortfolioChecker} replace it with a new one.
+     */
+    @Builder.Default
+    int maxFiniteDomains = 1000;
+
+    /**
+     * Encode StartWith / EndWith / Contain conditions with multiple values into a single
+     * regular expression membership compiled from the trie of the values,
+     * rather than a disjunction of string constraints per value.
+     */
+    @Builder.Default
+    boolean regexEncoding = false;
+
+    /**
+     * Collapse principals, hosts and resource names which no condition of the checked policies can tell apart
+     * into a single representative before solving.
+     * Effective when many literals appear in identical sets of entries, e.g. service accounts sharing ACLs.
+     */
+    @Builder.Default
+    boolean symmetryReduction = false;
+
+    /**
+     * Attach {@link AclCheckContext.Explanation} to negative intersection and positive superset results
+     * of {@link AclCheckContext#intersection(AclPolicy, AclPolicy)} and
+     * {@link AclCheckContext#supersetOf(AclPolicy, AclPolicy)}.
+     * Checks are always decided by the solver in this mode.
+     */
+    @Builder.Default
+    boolean explain = false;
+
+    /**
+     * Attach {@link CheckStats} to check results.
+     * Disabled by default since counting asserted AST nodes and fetching solver statistics have a cost.
+     */
+    @Builder.Default
+    boolean collectStats = false;
+
+    @NonNull
+    @Builder.Default
+    StringSolver stringSolver = StringSolver.Seq;
+
+    /**
+     * Names of the Z3 tactics to build the solver from, which are applied in order.
+     * Empty means the default solver.
+     */
+    @NonNull
+    @Builder.Default
+    List<String> tactics = Collections.emptyList();
+
+    public enum StringSolver {
+        Seq("seq"),
+        Z3Str3("z3str3"),
+        ;
+
+        final String paramValue;
+
+        StringSolver(String paramValue) {
+            this.paramValue = paramValue;
+        }
+    }
+
+    public static AclCheckOptions defaults() {
+        return builder().build();
+    }
+}
@@ -45,6 +45,16 @@ public class AclConstraint {
         return new AclPolicy(singletonList(new Entry(PermissionType.Allow, this)));
     }
 
+    /**
+     * Returns true if the constraint contains given concrete request-tuple.
+     */
+    public boolean matches(RequestTuple request) {
+        return userPrincipal.matches(request.userPrincipal()) &&
+               host.matches(request.host()) &&
+               operation.matches(request.operation()) &&
+               resource.matches(request.resourceType(), request.resourceName());
+    }
+
     @Value
     @Accessors(fluent = true)
     public static class StringCondition {
@@ -65,6 +75,34 @@ public class AclConstraint {
             this.op = op;
             this.value = require(value, v -> !v.isEmpty(), "value must not be empty");
         }
+
+        public boolean matches(String str) {
+            if (value.contains(WILDCARD)) {
+                return !negate;
+            }
+            boolean matches = false;
+            for (String v : value) {
+                if (matches(v, str)) {
+                    matches = true;
+                    break;
+                }
+            }
+            return negate != matches;
+        }
+
+        private boolean matches(String v, String str) {
+            switch (op) {
+                case StartWith:
+                    return str.startsWith(v);
+                case EndWith:
+                    return str.endsWith(v);
+                case Contain:
+                    return str.contains(v);
+                case In:
+                    return str.equals(v);
+            }
+            throw new RuntimeException("Never happen");
+        }
     }
 
     @Value
@@ -86,6 +124,11 @@ public class AclConstraint {
                     AclOperation.ANY,
                     AclOperation.UNKNOWN);
         }
+
+        public boolean matches(AclOperation operation) {
+            boolean matches = value == AclOperation.ALL || value == operation;
+            return op == EqualityOperator.Eq ? matches : !matches;
+        }
     }
 
     @Value
@@ -107,6 +150,10 @@ public class AclConstraint {
                     ResourceType.ANY);
             this.resourceName = resourceName;
         }
+
+        public boolean matches(ResourceType resourceType, String resourceName) {
+            return this.resourceType == resourceType && this.resourceName.matches(resourceName);
+        }
     }
 
     public enum EqualityOperator {
@@ -3,6 +3,7 @@ package com.mayreh.kalc;
 import static com.mayreh.kalc.Utils.requireNoneOf;
 import static java.util.Collections.singletonList;
 
+import java.beans.ConstructorProperties;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -19,9 +20,14 @@ import com.mayreh.kalc.AclConstraint.StringCondition;
 import com.mayreh.kalc.AclConstraint.StringOperator;
 import com.mayreh.kalc.AclPolicy.Entry.PermissionType;
 
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NonNull;
+import lombok.ToString;
 import lombok.Value;
 import lombok.experimental.Accessors;
+import lombok.experimental.NonFinal;
 
 /**
  * Represents an ACL policy, a set of request-tuples that are considered to be authorized.
@@ -29,10 +35,21 @@ import lombok.experimental.Accessors;
 @Value
 @Accessors(fluent = true)
 public class AclPolicy {
-    private static final String USER_PREFIX = "User:";
+    public static final String USER_PREFIX = "User:";
 
     List<Entry> entries;
 
+    @NonFinal
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    transient volatile AclPolicyIndex compiledIndex;
+
+    @ConstructorProperties({"entries"})
+    public AclPolicy(List<Entry> entries) {
+        this.entries = entries;
+    }
+
     @Value
     @Accessors(fluent = true)
     public static class Entry {
@@ -46,15 +63,11 @@ public class AclPolicy {
             Allow,
             Deny,
         }
-    }
 
-    /**
-     * Instantiate the {@link AclPolicy} from the collection of {@link AclBinding},
-     * which may be retrieved from Kafka Admin API.
-     */
-    public static AclPolicy fromAclBindings(Collection<AclBinding> bindings) {
-        List<Entry> entries = new ArrayList<>();
-        for (AclBinding binding : bindings) {
+        /**
+         * Instantiate the {@link Entry} from single {@link AclBinding}.
+         */
+        public static Entry fromAclBinding(AclBinding binding) {
             AccessControlEntry accessControlEntry = binding.entry();
 
             final PermissionType permissionType;
@@ -83,7 +96,7 @@ public class AclPolicy {
                 resourceNameOp = StringOperator.In;
             }
 
-            Entry entry = new Entry(
+            return new Entry(
                     permissionType,
                     new AclConstraint(
                             new StringCondition(
@@ -98,7 +111,48 @@ public class AclPolicy {
                                                         resourceNameOp,
                                                         singletonList(binding.pattern().name())))
                     ));
-            entries.add(entry);
+        }
+    }
+
+    /**
+     * Returns true if the policy authorizes given concrete request-tuple.
+     * Unlike {@link AclCheckContext}, this doesn't involve the solver so it's suitable for
+     * evaluating large number of request-tuples.
+     */
+    public boolean authorizes(RequestTuple request) {
+        return index().authorizes(request);
+    }
+
+    /**
+     * Returns the {@link AclPolicyIndex} of this policy, which is compiled on the first call.
+     */
+    public AclPolicyIndex index() {
+        AclPolicyIndex index = compiledIndex;
+        if (index == null) {
+            index = AclPolicyIndex.compile(this);
+            compiledIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the equivalent policy without entries which are syntactically contained by other entries,
+     * e.g. a literal topic entry covered by a prefixed one or a per-operation entry covered by ALL.
+     * This doesn't involve the solver so some redundant entries may remain.
+     * See {@link AclCheckContext#minimize(AclPolicy)} for more thorough minimization.
+     */
+    public AclPolicy minimize() {
+        return PolicyMinimizer.minimize(this);
+    }
+
+    /**
+     * Instantiate the {@link AclPolicy} from the collection of {@link AclBinding},
+     * which may be retrieved from Kafka Admin API.
+     */
+    public static AclPolicy fromAclBindings(Collection<AclBinding> bindings) {
+        List<Entry> entries = new ArrayList<>();
+        for (AclBinding binding : bindings) {
+            entries.add(Entry.fromAclBinding(binding));
         }
         return new AclPolicy(entries);
     }
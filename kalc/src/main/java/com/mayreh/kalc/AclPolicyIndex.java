@@ -0,0 +1,147 @@
+package com.mayreh.kalc;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+
+import com.mayreh.kalc.AclConstraint.StringCondition;
+import com.mayreh.kalc.AclConstraint.StringOperator;
+
+/**
+ * Compiled form of {@link AclPolicy} to evaluate concrete request-tuples without the solver.
+ *
+ * Entries are indexed by (resourceType, operation) first, then by literal user principal
+ * and finally by literal or prefixed resource name, so only a few candidate entries
+ * have to be matched against a request-tuple.
+ */
+public final class AclPolicyIndex {
+    private final Map<ResourceType, Map<AclOperation, PrincipalIndex>> allow;
+    private final Map<ResourceType, Map<AclOperation, PrincipalIndex>> deny;
+
+    private AclPolicyIndex() {
+        allow = new EnumMap<>(ResourceType.class);
+        deny = new EnumMap<>(ResourceType.class);
+    }
+
+    public static AclPolicyIndex compile(AclPolicy policy) {
+        AclPolicyIndex index = new AclPolicyIndex();
+        for (AclPolicy.Entry entry : policy.entries()) {
+            switch (entry.permission()) {
+                case Allow:
+                    add(index.allow, entry.constraint());
+                    break;
+                case Deny:
+                    add(index.deny, entry.constraint());
+                    break;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns true if the request-tuple is allowed by any Allow entry and not denied by any Deny entry.
+     */
+    public boolean authorizes(RequestTuple request) {
+        return matches(allow, request) && !matches(deny, request);
+    }
+
+    private static void add(Map<ResourceType, Map<AclOperation, PrincipalIndex>> index,
+                            AclConstraint constraint) {
+        Map<AclOperation, PrincipalIndex> byOperation = index.computeIfAbsent(
+                constraint.resource().resourceType(), t -> new EnumMap<>(AclOperation.class));
+        for (AclOperation operation : Utils.CONCRETE_OPERATIONS) {
+            if (constraint.operation().matches(operation)) {
+                byOperation.computeIfAbsent(operation, o -> new PrincipalIndex()).add(constraint);
+            }
+        }
+    }
+
+    private static boolean matches(Map<ResourceType, Map<AclOperation, PrincipalIndex>> index,
+                                   RequestTuple request) {
+        Map<AclOperation, PrincipalIndex> byOperation = index.get(request.resourceType());
+        if (byOperation == null) {
+            return false;
+        }
+        PrincipalIndex principalIndex = byOperation.get(request.operation());
+        return principalIndex != null && principalIndex.matches(request);
+    }
+
+    private static boolean isLiteral(StringCondition condition) {
+        return !condition.negate() &&
+               condition.op() == StringOperator.In &&
+               !condition.value().contains(AclConstraint.WILDCARD);
+    }
+
+    private static boolean isPrefix(StringCondition condition) {
+        return !condition.negate() &&
+               condition.op() == StringOperator.StartWith &&
+               !condition.value().contains(AclConstraint.WILDCARD);
+    }
+
+    private static class PrincipalIndex {
+        private final Map<String, ResourceNameIndex> literals = new HashMap<>();
+        private final ResourceNameIndex others = new ResourceNameIndex();
+
+        void add(AclConstraint constraint) {
+            StringCondition condition = constraint.userPrincipal();
+            if (isLiteral(condition)) {
+                for (String principal : condition.value()) {
+                    literals.computeIfAbsent(principal, p -> new ResourceNameIndex()).add(constraint);
+                }
+            } else {
+                others.add(constraint);
+            }
+        }
+
+        boolean matches(RequestTuple request) {
+            ResourceNameIndex index = literals.get(request.userPrincipal());
+            return (index != null && index.matches(request)) || others.matches(request);
+        }
+    }
+
+    private static class ResourceNameIndex {
+        private final Map<String, List<AclConstraint>> literals = new HashMap<>();
+        private final PrefixTrie<AclConstraint> prefixes = new PrefixTrie<>();
+        private final List<AclConstraint> others = new ArrayList<>();
+
+        void add(AclConstraint constraint) {
+            StringCondition condition = constraint.resource().resourceName();
+            if (isLiteral(condition)) {
+                for (String name : condition.value()) {
+                    literals.computeIfAbsent(name, n -> new ArrayList<>()).add(constraint);
+                }
+            } else if (isPrefix(condition)) {
+                for (String prefix : condition.value()) {
+                    prefixes.put(prefix, constraint);
+                }
+            } else {
+                others.add(constraint);
+            }
+        }
+
+        boolean matches(RequestTuple request) {
+            List<AclConstraint> candidates = literals.get(request.resourceName());
+            if (candidates != null) {
+                for (AclConstraint constraint : candidates) {
+                    if (constraint.matches(request)) {
+                        return true;
+                    }
+                }
+            }
+            if (prefixes.anyPrefixOf(request.resourceName(), c -> c.matches(request))) {
+                return true;
+            }
+            for (AclConstraint constraint : others) {
+                if (constraint.matches(request)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
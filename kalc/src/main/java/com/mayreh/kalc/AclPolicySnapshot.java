@@ -0,0 +1,273 @@
+package com.mayreh.kalc;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.singletonList;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+
+import com.mayreh.kalc.AclConstraint.AclOperationCondition;
+import com.mayreh.kalc.AclConstraint.EqualityOperator;
+import com.mayreh.kalc.AclConstraint.ResourceCondition;
+import com.mayreh.kalc.AclConstraint.StringCondition;
+import com.mayreh.kalc.AclConstraint.StringOperator;
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.AclPolicy.Entry.PermissionType;
+
+/**
+ * Compact binary serialization of {@link AclPolicy}.
+ *
+ * Layout:
+ * <pre>
+ * snapshot  := MAGIC VERSION record* END
+ * record    := ENTRY permission condition(userPrincipal) condition(host)
+ *              operationOp operationCode resourceTypeCode condition(resourceName)
+ * condition := (operator &lt;&lt; 1 | negate) count string{count}
+ * string    := 0 length utf8Bytes   // defines a new string, assigned the next index
+ *            | index + 1            // refers to the string defined before
+ * </pre>
+ * All integers are unsigned varints. Operation and resource type are stored as Kafka's stable codes.
+ * Strings are defined on their first occurrence so that the snapshot can be written in streaming manner,
+ * and are shared by all conditions that refer to them on reading.
+ */
+public final class AclPolicySnapshot {
+    private static final byte[] MAGIC = {'K', 'A', 'L', 'C'};
+    private static final int VERSION = 1;
+    private static final int END = 0;
+    private static final int ENTRY = 1;
+
+    private AclPolicySnapshot() {}
+
+    /**
+     * Writes entries incrementally. The snapshot is completed on {@link #close()}.
+     */
+    public static final class Writer implements Closeable {
+        private final OutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+
+        public Writer(OutputStream out) throws IOException {
+            this.out = new BufferedOutputStream(out);
+            this.out.write(MAGIC);
+            writeVarint(VERSION);
+        }
+
+        public void write(Entry entry) throws IOException {
+            AclConstraint constraint = entry.constraint();
+            writeVarint(ENTRY);
+            writeVarint(entry.permission().ordinal());
+            write(constraint.userPrincipal());
+            write(constraint.host());
+            writeVarint(constraint.operation().op().ordinal());
+            writeVarint(constraint.operation().value().code());
+            writeVarint(constraint.resource().resourceType().code());
+            write(constraint.resource().resourceName());
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeVarint(END);
+                out.flush();
+            } finally {
+                out.close();
+            }
+        }
+
+        private void write(StringCondition condition) throws IOException {
+            writeVarint(condition.op().ordinal() << 1 | (condition.negate() ? 1 : 0));
+            writeVarint(condition.value().size());
+            for (String value : condition.value()) {
+                Integer index = strings.get(value);
+                if (index != null) {
+                    writeVarint(index + 1);
+                } else {
+                    strings.put(value, strings.size());
+                    byte[] bytes = value.getBytes(UTF_8);
+                    writeVarint(0);
+                    writeVarint(bytes.length);
+                    out.write(bytes);
+                }
+            }
+        }
+
+        private void writeVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+    }
+
+    public static void write(AclPolicy policy, Path path) throws IOException {
+        try (Writer writer = new Writer(Files.newOutputStream(path))) {
+            for (Entry entry : policy.entries()) {
+                writer.write(entry);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the file starts with the snapshot magic.
+     */
+    public static boolean isSnapshot(Path path) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        try (InputStream is = Files.newInputStream(path)) {
+            int read = 0;
+            while (read < header.length) {
+                int n = is.read(header, read, header.length - read);
+                if (n < 0) {
+                    return false;
+                }
+                read += n;
+            }
+        }
+        return Arrays.equals(header, MAGIC);
+    }
+
+    /**
+     * Returns true if the content starts with the snapshot magic.
+     */
+    public static boolean isSnapshot(byte[] content) {
+        return content.length >= MAGIC.length
+               && Arrays.equals(Arrays.copyOf(content, MAGIC.length), MAGIC);
+    }
+
+    /**
+     * Reads the snapshot through memory-mapped file.
+     */
+    public static AclPolicy read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer);
+        }
+    }
+
+    /**
+     * Reads the snapshot from the buffer, which is consumed up to the end of the snapshot.
+     *
+     * @throws IllegalArgumentException if the snapshot is truncated or corrupted
+     */
+    public static AclPolicy read(ByteBuffer buffer) {
+        try {
+            return new Reader(buffer).read();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Malformed policy snapshot", e);
+        }
+    }
+
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private final List<String> strings = new ArrayList<>();
+        private byte[] bytes = new byte[256];
+
+        Reader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        AclPolicy read() {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IllegalArgumentException("Not a policy snapshot");
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version: " + version);
+            }
+
+            List<Entry> entries = new ArrayList<>();
+            while (readVarint() == ENTRY) {
+                PermissionType permission = PermissionType.values()[readVarint()];
+                StringCondition userPrincipal = readCondition();
+                StringCondition host = readCondition();
+                AclOperationCondition operation = new AclOperationCondition(
+                        EqualityOperator.values()[readVarint()],
+                        AclOperation.fromCode((byte) readVarint()));
+                ResourceType resourceType = ResourceType.fromCode((byte) readVarint());
+                StringCondition resourceName = readCondition();
+                entries.add(new Entry(
+                        permission,
+                        new AclConstraint(userPrincipal,
+                                          host,
+                                          operation,
+                                          new ResourceCondition(resourceType, resourceName))));
+            }
+            return new AclPolicy(entries);
+        }
+
+        private StringCondition readCondition() {
+            int header = readVarint();
+            int count = readLength();
+            final List<String> value;
+            if (count == 1) {
+                value = singletonList(readString());
+            } else {
+                String[] values = new String[count];
+                for (int i = 0; i < count; i++) {
+                    values[i] = readString();
+                }
+                value = Arrays.asList(values);
+            }
+            return new StringCondition((header & 1) != 0, StringOperator.values()[header >>> 1], value);
+        }
+
+        private String readString() {
+            int ref = readVarint();
+            if (ref > 0) {
+                return strings.get(ref - 1);
+            }
+            int length = readLength();
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            buffer.get(bytes, 0, length);
+            String str = new String(bytes, 0, length, UTF_8);
+            strings.add(str);
+            return str;
+        }
+
+        /**
+         * Reads the varint which bounds the following data, so that corrupted one doesn't allocate
+         * an array more than the rest of the buffer.
+         */
+        private int readLength() {
+            int length = readVarint();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IllegalArgumentException("Malformed policy snapshot: length " + length);
+            }
+            return length;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+}
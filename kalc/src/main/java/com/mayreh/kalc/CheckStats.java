@@ -0,0 +1,47 @@
+package com.mayreh.kalc;
+
+import java.util.Collections;
+import java.util.Map;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Performance statistics of a check.
+ * Collected only if {@link AclCheckOptions#collectStats()} is enabled.
+ */
+@Value
+@Builder
+@Accessors(fluent = true)
+public class CheckStats {
+    /**
+     * Time spent to encode policies into formulas.
+     * Becomes small for repeated checks against the same entries since encodings are cached.
+     */
+    long encodeNanos;
+
+    /**
+     * Time spent in the solver, or in {@link SyntacticChecker} for syntactically decided checks
+     */
+    long solveNanos;
+
+    /**
+     * Number of policy entries involved in the check
+     */
+    int entries;
+
+    /**
+     * Number of distinct AST nodes asserted to the solver
+     */
+    int astNodes;
+
+    /**
+     * Statistics reported by Z3, e.g. conflicts, decisions and memory.
+     * Empty for syntactically decided checks.
+     */
+    @NonNull
+    @Builder.Default
+    Map<String, Number> solverStatistics = Collections.emptyMap();
+}
@@ -0,0 +1,55 @@
+package com.mayreh.kalc;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Options to enumerate multiple examples from a check.
+ * See {@link AclCheckContext#intersectionExamples} and {@link AclCheckContext#supersetCounterexamples}.
+ */
+@Value
+@Builder(toBuilder = true)
+@Accessors(fluent = true)
+public class EnumerationOptions {
+    /**
+     * Max number of examples to enumerate.
+     */
+    @Builder.Default
+    int limit = 100;
+
+    /**
+     * Wall-clock budget for the entire enumeration in milliseconds. 0 means no budget.
+     * Enumeration stops when the budget is exhausted.
+     */
+    @Builder.Default
+    long timeBudgetMillis = 0;
+
+    /**
+     * Fields whose values in each example are excluded from subsequent examples.
+     * e.g. With only {@link Field#UserPrincipal}, every example has a distinct principal.
+     * With all fields, examples are just distinct request-tuples.
+     */
+    @NonNull
+    @Builder.Default
+    Set<Field> distinctBy = EnumSet.allOf(Field.class);
+
+    /**
+     * Fields of {@link RequestTuple}
+     */
+    public enum Field {
+        UserPrincipal,
+        Host,
+        Operation,
+        ResourceType,
+        ResourceName,
+    }
+
+    public static EnumerationOptions defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,86 @@
+package com.mayreh.kalc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.mayreh.kalc.AclPolicy.Entry;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Entry-level difference between two versions of a policy.
+ * Entries are compared as a multiset, so reordering entries is not a difference.
+ */
+@Value
+@Accessors(fluent = true)
+public class PolicyDiff {
+    /**
+     * Entries which are in the new policy but not in the old policy
+     */
+    @NonNull
+    List<Entry> added;
+
+    /**
+     * Entries which are in the old policy but not in the new policy
+     */
+    @NonNull
+    List<Entry> removed;
+
+    public static PolicyDiff of(AclPolicy oldPolicy, AclPolicy newPolicy) {
+        Map<Entry, Integer> remaining = new HashMap<>();
+        for (Entry entry : oldPolicy.entries()) {
+            remaining.merge(entry, 1, Integer::sum);
+        }
+
+        List<Entry> added = new ArrayList<>();
+        for (Entry entry : newPolicy.entries()) {
+            Integer count = remaining.get(entry);
+            if (count == null) {
+                added.add(entry);
+            } else if (count == 1) {
+                remaining.remove(entry);
+            } else {
+                remaining.put(entry, count - 1);
+            }
+        }
+
+        List<Entry> removed = new ArrayList<>();
+        for (Entry entry : oldPolicy.entries()) {
+            Integer count = remaining.get(entry);
+            if (count != null) {
+                removed.add(entry);
+                if (count == 1) {
+                    remaining.remove(entry);
+                } else {
+                    remaining.put(entry, count - 1);
+                }
+            }
+        }
+        return new PolicyDiff(added, removed);
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * Returns the slices changed entries overlap.
+     * Request-tuples outside of these slices are contained by both versions or by neither.
+     */
+    public Set<PolicySlice> slices() {
+        Set<PolicySlice> slices = new LinkedHashSet<>();
+        for (Entry entry : added) {
+            slices.addAll(PolicySlice.slicesOf(entry.constraint()));
+        }
+        for (Entry entry : removed) {
+            slices.addAll(PolicySlice.slicesOf(entry.constraint()));
+        }
+        return slices;
+    }
+}
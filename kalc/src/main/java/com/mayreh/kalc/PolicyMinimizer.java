@@ -0,0 +1,221 @@
+package com.mayreh.kalc;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+
+import com.mayreh.kalc.AclConstraint.AclOperationCondition;
+import com.mayreh.kalc.AclConstraint.EqualityOperator;
+import com.mayreh.kalc.AclConstraint.StringCondition;
+import com.mayreh.kalc.AclConstraint.StringOperator;
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.AclPolicy.Entry.PermissionType;
+
+/**
+ * Removes entries which don't change the set of request-tuples the policy contains,
+ * based on cheap syntactic containment between entries.
+ *
+ * The containment check is conservative, i.e. it may miss some redundant entries
+ * but never removes a necessary one.
+ */
+final class PolicyMinimizer {
+    private PolicyMinimizer() {}
+
+    /**
+     * Returns the equivalent policy without entries that are:
+     * - Allow entry contained by another Allow entry or by a Deny entry
+     * - Deny entry contained by another Deny entry
+     * - Deny entry which doesn't share any slice with Allow entries
+     */
+    static AclPolicy minimize(AclPolicy policy) {
+        List<Entry> entries = policy.entries();
+        boolean[] removed = new boolean[entries.size()];
+        Map<ResourceType, Candidates> allow = index(entries, PermissionType.Allow);
+        Map<ResourceType, Candidates> deny = index(entries, PermissionType.Deny);
+
+        Set<PolicySlice> allowSlices = new HashSet<>();
+        for (Entry entry : entries) {
+            if (entry.permission() == PermissionType.Allow) {
+                allowSlices.addAll(PolicySlice.slicesOf(entry.constraint()));
+            }
+        }
+
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            AclConstraint constraint = entry.constraint();
+            switch (entry.permission()) {
+                case Allow:
+                    removed[i] = coveredByOther(i, constraint, allow, entries, removed) ||
+                                 coveredByOther(i, constraint, deny, entries, removed);
+                    break;
+                case Deny:
+                    removed[i] = !overlapsAny(constraint, allowSlices) ||
+                                 coveredByOther(i, constraint, deny, entries, removed);
+                    break;
+            }
+        }
+
+        List<Entry> result = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (!removed[i]) {
+                result.add(entries.get(i));
+            }
+        }
+        return new AclPolicy(result);
+    }
+
+    private static boolean overlapsAny(AclConstraint constraint, Set<PolicySlice> slices) {
+        for (PolicySlice slice : PolicySlice.slicesOf(constraint)) {
+            if (slices.contains(slice)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Entry indexes of the same permission grouped by literal user principal,
+     * to find containing entries without comparing all pairs.
+     */
+    private static class Candidates {
+        final Map<String, List<Integer>> literalPrincipals = new HashMap<>();
+        final List<Integer> otherPrincipals = new ArrayList<>();
+    }
+
+    private static Map<ResourceType, Candidates> index(List<Entry> entries, PermissionType permission) {
+        Map<ResourceType, Candidates> index = new EnumMap<>(ResourceType.class);
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.permission() != permission) {
+                continue;
+            }
+            Candidates candidates = index.computeIfAbsent(
+                    entry.constraint().resource().resourceType(), t -> new Candidates());
+            StringCondition principal = entry.constraint().userPrincipal();
+            if (isLiteral(principal)) {
+                for (String value : principal.value()) {
+                    candidates.literalPrincipals.computeIfAbsent(value, v -> new ArrayList<>()).add(i);
+                }
+            } else {
+                candidates.otherPrincipals.add(i);
+            }
+        }
+        return index;
+    }
+
+    private static boolean coveredByOther(int i,
+                                          AclConstraint constraint,
+                                          Map<ResourceType, Candidates> index,
+                                          List<Entry> entries,
+                                          boolean[] removed) {
+        Candidates candidates = index.get(constraint.resource().resourceType());
+        if (candidates == null) {
+            return false;
+        }
+        List<List<Integer>> groups = new ArrayList<>();
+        groups.add(candidates.otherPrincipals);
+        StringCondition principal = constraint.userPrincipal();
+        if (isLiteral(principal)) {
+            // containing entry must contain the first value at least
+            groups.add(candidates.literalPrincipals.getOrDefault(principal.value().get(0), new ArrayList<>()));
+        } else {
+            groups.addAll(candidates.literalPrincipals.values());
+        }
+        for (List<Integer> group : groups) {
+            for (int j : group) {
+                if (j != i && !removed[j] && contains(entries.get(j).constraint(), constraint)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if outer contains every request-tuple of inner.
+     */
+    static boolean contains(AclConstraint outer, AclConstraint inner) {
+        return outer.resource().resourceType() == inner.resource().resourceType() &&
+               contains(outer.operation(), inner.operation()) &&
+               contains(outer.userPrincipal(), inner.userPrincipal()) &&
+               contains(outer.host(), inner.host()) &&
+               contains(outer.resource().resourceName(), inner.resource().resourceName());
+    }
+
+    private static boolean contains(AclOperationCondition outer, AclOperationCondition inner) {
+        if (outer.op() == EqualityOperator.Eq && outer.value() == AclOperation.ALL) {
+            return true;
+        }
+        if (inner.op() == EqualityOperator.NotEq && inner.value() == AclOperation.ALL) {
+            return true;
+        }
+        if (inner.op() == EqualityOperator.Eq) {
+            return inner.value() != AclOperation.ALL && outer.matches(inner.value());
+        }
+        return outer.equals(inner);
+    }
+
+    private static boolean contains(StringCondition outer, StringCondition inner) {
+        boolean outerWildcard = outer.value().contains(AclConstraint.WILDCARD);
+        boolean innerWildcard = inner.value().contains(AclConstraint.WILDCARD);
+        if (outerWildcard && !outer.negate()) {
+            return true;
+        }
+        if (innerWildcard) {
+            // negated wildcard is empty
+            return inner.negate();
+        }
+        if (inner.negate()) {
+            return outer.equals(inner);
+        }
+        if (inner.op() == StringOperator.In) {
+            for (String value : inner.value()) {
+                if (!outer.matches(value)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (outer.negate() || outer.op() != inner.op()) {
+            return false;
+        }
+        for (String value : inner.value()) {
+            boolean covered = false;
+            for (String outerValue : outer.value()) {
+                switch (inner.op()) {
+                    case StartWith:
+                        covered = value.startsWith(outerValue);
+                        break;
+                    case EndWith:
+                        covered = value.endsWith(outerValue);
+                        break;
+                    case Contain:
+                        covered = value.contains(outerValue);
+                        break;
+                    default:
+                        break;
+                }
+                if (covered) {
+                    break;
+                }
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLiteral(StringCondition condition) {
+        return !condition.negate() &&
+               condition.op() == StringOperator.In &&
+               !condition.value().contains(AclConstraint.WILDCARD);
+    }
+}
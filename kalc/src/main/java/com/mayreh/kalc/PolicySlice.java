@@ -0,0 +1,95 @@
+package com.mayreh.kalc;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+
+import com.mayreh.kalc.AclPolicy.Entry;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Represents a cell of the request-tuple universe with fixed (resourceType, operation).
+ *
+ * Since every {@link AclConstraint} pins the resourceType and operation takes only finite values,
+ * checks over a policy can be split into independent sub-problems per slice.
+ */
+@Value
+@Accessors(fluent = true)
+public class PolicySlice {
+    @NonNull
+    ResourceType resourceType;
+
+    @NonNull
+    AclOperation operation;
+
+    /**
+     * Returns true if the constraint may contain request-tuples in this slice.
+     */
+    public boolean overlaps(AclConstraint constraint) {
+        return constraint.resource().resourceType() == resourceType &&
+               constraint.operation().matches(operation);
+    }
+
+    /**
+     * Returns the slices the constraint may contain request-tuples in.
+     */
+    public static Set<PolicySlice> slicesOf(AclConstraint constraint) {
+        Set<PolicySlice> slices = new LinkedHashSet<>();
+        for (AclOperation operation : Utils.CONCRETE_OPERATIONS) {
+            if (constraint.operation().matches(operation)) {
+                slices.add(new PolicySlice(constraint.resource().resourceType(), operation));
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * Split the policy into sub-policies of the given slices.
+     * Unlike {@link #partition(AclPolicy)}, every given slice is included even if no entry overlaps it.
+     */
+    public static Map<PolicySlice, AclPolicy> partition(AclPolicy policy, Set<PolicySlice> slices) {
+        Map<PolicySlice, List<Entry>> entries = new LinkedHashMap<>();
+        for (PolicySlice slice : slices) {
+            entries.put(slice, new ArrayList<>());
+        }
+        for (Entry entry : policy.entries()) {
+            for (PolicySlice slice : slicesOf(entry.constraint())) {
+                List<Entry> sliceEntries = entries.get(slice);
+                if (sliceEntries != null) {
+                    sliceEntries.add(entry);
+                }
+            }
+        }
+
+        Map<PolicySlice, AclPolicy> result = new LinkedHashMap<>();
+        entries.forEach((slice, sliceEntries) -> result.put(slice, new AclPolicy(sliceEntries)));
+        return result;
+    }
+
+    /**
+     * Split the policy into sub-policies per slice.
+     * Each sub-policy consists of the entries that overlap the slice, in the original order.
+     * Slices that no entry overlaps are not included.
+     */
+    public static Map<PolicySlice, AclPolicy> partition(AclPolicy policy) {
+        Map<PolicySlice, List<Entry>> entries = new LinkedHashMap<>();
+        for (Entry entry : policy.entries()) {
+            for (PolicySlice slice : slicesOf(entry.constraint())) {
+                entries.computeIfAbsent(slice, s -> new ArrayList<>()).add(entry);
+            }
+        }
+
+        Map<PolicySlice, AclPolicy> result = new LinkedHashMap<>();
+        entries.forEach((slice, sliceEntries) -> result.put(slice, new AclPolicy(sliceEntries)));
+        return result;
+    }
+}
@@ -0,0 +1,267 @@
+package com.mayreh.kalc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.mayreh.kalc.AclCheckContext.IntersectionResult;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.AclCheckOptions.StringSolver;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * Races the same check on several {@link AclCheckContext}s configured differently,
+ * since the fastest configuration depends on the shape of policies.
+ *
+ * The first definitive (i.e. not unknown) result is returned and the other contexts are interrupted.
+ * Interrupted contexts are closed right after the check returns, and re-created by the lane
+ * when it runs its next check.
+ * The number of wins per configuration is recorded to tune the defaults.
+ * Thread-safe. Concurrent races share the lanes, each of which runs one check at a time.
+ */
+public class PortfolioChecker implements AutoCloseable {
+    @Value
+    @Accessors(fluent = true)
+    public static class Configuration {
+        @NonNull
+        String name;
+
+        @NonNull
+        AclCheckOptions options;
+    }
+
+    @Value
+    @Accessors(fluent = true)
+    public static class Outcome<T> {
+        @NonNull
+        T result;
+
+        /**
+         * Name of the configuration which returned the result. Absent if no configuration was definitive
+         */
+        @NonNull
+        Optional<String> winner;
+
+        long elapsedNanos;
+    }
+
+    private final List<Lane> lanes;
+    private final ExecutorService executor;
+    private final Map<String, LongAdder> wins = new LinkedHashMap<>();
+    private final AtomicLong raceId = new AtomicLong();
+
+    public PortfolioChecker(List<Configuration> configurations) {
+        Utils.require(configurations, c -> !c.isEmpty(), "configurations must not be empty");
+        lanes = new ArrayList<>(configurations.size());
+        try {
+            for (Configuration configuration : configurations) {
+                lanes.add(new Lane(configuration));
+                wins.put(configuration.name(), new LongAdder());
+            }
+        } catch (RuntimeException e) {
+            lanes.forEach(Lane::close);
+            throw e;
+        }
+
+        executor = Utils.daemonThreadPool("kalc-portfolio", configurations.size());
+    }
+
+    /**
+     * Configurations which are known to win on some policy shapes, derived from the base options.
+     */
+    public static List<Configuration> defaultConfigurations(AclCheckOptions base) {
+        return Arrays.asList(
+                new Configuration("seq", base.toBuilder().stringSolver(StringSolver.Seq).build()),
+                new Configuration("z3str3", base.toBuilder().stringSolver(StringSolver.Z3Str3).build()),
+                new Configuration("finite-domain", base.toBuilder().finiteDomainEncoding(true).build()),
+                new Configuration("regex", base.toBuilder().regexEncoding(true).build()),
+                new Configuration("preprocess", base.toBuilder()
+                                                    .tactics(Arrays.asList(
+                                                            "simplify", "propagate-values", "solve-eqs", "smt"))
+                                                    .build()));
+    }
+
+    public Outcome<IntersectionResult> intersection(AclPolicy p1, AclPolicy p2) {
+        return race(ctx -> ctx.intersection(p1, p2), IntersectionResult::unknown);
+    }
+
+    public Outcome<SupersetResult> supersetOf(AclPolicy p1, AclPolicy p2) {
+        return race(ctx -> ctx.supersetOf(p1, p2), SupersetResult::unknown);
+    }
+
+    /**
+     * Returns the number of wins per configuration name, in the order of configurations.
+     */
+    public Map<String, Long> wins() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        wins.forEach((name, count) -> result.put(name, count.sum()));
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (Lane lane : lanes) {
+            lane.interrupt();
+        }
+        lanes.forEach(Lane::close);
+    }
+
+    private <T> Outcome<T> race(Function<AclCheckContext, T> check, Predicate<T> unknown) {
+        long id = raceId.incrementAndGet();
+        // per race, so that finishing a race never skips checks of other races running concurrently
+        AtomicBoolean over = new AtomicBoolean();
+        long start = System.nanoTime();
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<T>, Lane> futures = new HashMap<>();
+        for (Lane lane : lanes) {
+            futures.put(completionService.submit(() -> lane.run(id, over, check)), lane);
+        }
+
+        Optional<T> unknownResult = Optional.empty();
+        RuntimeException failure = null;
+        try {
+            for (int i = 0; i < lanes.size(); i++) {
+                Future<T> future = completionService.take();
+                final T result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof RuntimeException
+                                  ? (RuntimeException) e.getCause()
+                                  : new RuntimeException(e.getCause());
+                    }
+                    continue;
+                }
+                if (result == null) {
+                    // the lane skipped the race as it was already over
+                    continue;
+                }
+                if (!unknown.test(result)) {
+                    String winner = futures.get(future).configuration.name();
+                    wins.get(winner).increment();
+                    return new Outcome<>(result, Optional.of(winner), System.nanoTime() - start);
+                }
+                if (!unknownResult.isPresent()) {
+                    unknownResult = Optional.of(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            // losers are not awaited. Each lane runs one check at a time so the next race waits for them
+            over.set(true);
+            for (Lane lane : lanes) {
+                lane.cancel(id);
+            }
+        }
+        if (unknownResult.isPresent()) {
+            return new Outcome<>(unknownResult.get(), Optional.empty(), System.nanoTime() - start);
+        }
+        throw failure;
+    }
+
+    /**
+     * A context with its configuration, which runs one check at a time.
+     */
+    private static final class Lane {
+        private final Configuration configuration;
+        // serializes checks on the context
+        private final Object runLock = new Object();
+
+        // guarded by this
+        private AclCheckContext ctx;
+        private long runningRace;
+        private boolean interrupted;
+        private boolean closed;
+
+        Lane(Configuration configuration) {
+            this.configuration = configuration;
+            ctx = new AclCheckContext(configuration.options());
+        }
+
+        /**
+         * Run the check of the race, or returns null if the race is already over.
+         */
+        <T> T run(long raceId, AtomicBoolean over, Function<AclCheckContext, T> check) {
+            synchronized (runLock) {
+                final AclCheckContext current;
+                synchronized (this) {
+                    if (closed) {
+                        throw new IllegalStateException("checker is already closed");
+                    }
+                    if (over.get()) {
+                        return null;
+                    }
+                    if (ctx == null) {
+                        ctx = new AclCheckContext(configuration.options());
+                    }
+                    current = ctx;
+                    runningRace = raceId;
+                    interrupted = false;
+                }
+                try {
+                    return check.apply(current);
+                } finally {
+                    synchronized (this) {
+                        runningRace = 0;
+                        if (interrupted || ctx.finiteDomainsExhausted()) {
+                            ctx.close();
+                            ctx = null;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Interrupt the check of the race if it's running.
+         * Checks not started yet are skipped by the flag of the race, which must be set before calling this.
+         */
+        synchronized void cancel(long raceId) {
+            if (runningRace == raceId) {
+                interrupt();
+            }
+        }
+
+        synchronized void interrupt() {
+            if (runningRace != 0 && !interrupted) {
+                interrupted = true;
+                ctx.interrupt();
+            }
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+            }
+            synchronized (runLock) {
+                synchronized (this) {
+                    if (ctx != null) {
+                        ctx.close();
+                        ctx = null;
+                    }
+                }
+            }
+        }
+    }
+}
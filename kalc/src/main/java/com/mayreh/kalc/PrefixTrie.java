@@ -0,0 +1,48 @@
+package com.mayreh.kalc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Simple character trie which associates values to string prefixes.
+ */
+final class PrefixTrie<T> {
+    private final Node<T> root = new Node<>();
+
+    private static class Node<T> {
+        private final Map<Character, Node<T>> children = new HashMap<>();
+        private final List<T> values = new ArrayList<>();
+    }
+
+    void put(String prefix, T value) {
+        Node<T> node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.children.computeIfAbsent(prefix.charAt(i), c -> new Node<>());
+        }
+        node.values.add(value);
+    }
+
+    /**
+     * Returns true if any value associated to a prefix of given string satisfies the predicate.
+     */
+    boolean anyPrefixOf(String str, Predicate<T> predicate) {
+        Node<T> node = root;
+        for (int i = 0; ; i++) {
+            for (T value : node.values) {
+                if (predicate.test(value)) {
+                    return true;
+                }
+            }
+            if (i == str.length()) {
+                return false;
+            }
+            node = node.children.get(str.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.mayreh.kalc;
+
+import static com.mayreh.kalc.Utils.hex;
+import static com.mayreh.kalc.Utils.sha256;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+
+import com.mayreh.kalc.AclCheckContext.Engine;
+import com.mayreh.kalc.AclCheckContext.IntersectionResult;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.AclConstraint.StringCondition;
+import com.mayreh.kalc.AclPolicy.Entry;
+
+/**
+ * On-disk cache of check results keyed by the content of the policies, the check and the options.
+ *
+ * Policies are canonicalized before hashing, so reordering entries or values of a condition
+ * doesn't invalidate the cache. Cached results are returned with {@link Engine#Cache} without
+ * creating {@link AclCheckContext}, hence without loading Z3.
+ *
+ * Unknown results are not cached, and the cache is bypassed when stats or explanation is requested
+ * since they are not stored.
+ * The directory is evicted in least-recently-used order when it exceeds the max size.
+ * Multiple processes can share the directory as each result is written atomically.
+ */
+public class ResultCache {
+    // bump when the stored format or the semantics of checks change
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".properties";
+
+    private final Path dir;
+    private final long maxBytes;
+
+    public ResultCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    public IntersectionResult intersection(AclPolicy p1,
+                                           AclPolicy p2,
+                                           AclCheckOptions options,
+                                           Supplier<IntersectionResult> check) {
+        if (!cacheable(options)) {
+            return check.get();
+        }
+        Path path = path("intersection", p1, p2, options);
+        Optional<Properties> cached = read(path);
+        if (cached.isPresent()) {
+            return IntersectionResult.builder()
+                                     .intersects(Boolean.parseBoolean(cached.get().getProperty("result")))
+                                     .example(readExample(cached.get()))
+                                     .engine(Engine.Cache)
+                                     .build();
+        }
+        IntersectionResult result = check.get();
+        if (!result.unknown()) {
+            write(path, result.intersects(), result.example());
+        }
+        return result;
+    }
+
+    public SupersetResult supersetOf(AclPolicy p1,
+                                     AclPolicy p2,
+                                     AclCheckOptions options,
+                                     Supplier<SupersetResult> check) {
+        if (!cacheable(options)) {
+            return check.get();
+        }
+        Path path = path("supersetOf", p1, p2, options);
+        Optional<Properties> cached = read(path);
+        if (cached.isPresent()) {
+            return SupersetResult.builder()
+                                 .isSuperset(Boolean.parseBoolean(cached.get().getProperty("result")))
+                                 .counterexample(readExample(cached.get()))
+                                 .engine(Engine.Cache)
+                                 .build();
+        }
+        SupersetResult result = check.get();
+        if (!result.unknown()) {
+            write(path, result.isSuperset(), result.counterexample());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the hex SHA-256 of the canonical form of the policy.
+     * The canonical form is independent of the order of entries and values, and of duplicated entries.
+     */
+    public static String digest(AclPolicy policy) {
+        // TreeSet of hex strings is enough for sorting and deduplicating encoded entries
+        TreeSet<String> entries = new TreeSet<>();
+        for (Entry entry : policy.entries()) {
+            entries.add(hex(sha256().digest(canonicalize(entry))));
+        }
+        MessageDigest digest = sha256();
+        for (String entry : entries) {
+            digest.update(entry.getBytes(UTF_8));
+        }
+        return hex(digest.digest());
+    }
+
+    private static boolean cacheable(AclCheckOptions options) {
+        return !options.collectStats() && !options.explain();
+    }
+
+    private Path path(String check, AclPolicy p1, AclPolicy p2, AclCheckOptions options) {
+        MessageDigest digest = sha256();
+        digest.update((VERSION + "\n"
+                       + check + '\n'
+                       + digest(p1) + '\n'
+                       + digest(p2) + '\n'
+                       + options).getBytes(UTF_8));
+        return dir.resolve(hex(digest.digest()) + SUFFIX);
+    }
+
+    private static Optional<Properties> read(Path path) {
+        Properties props = new Properties();
+        try (InputStream is = Files.newInputStream(path)) {
+            props.load(is);
+            // refresh the access time for LRU eviction
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Optional.of(props);
+    }
+
+    private void write(Path path, boolean result, Optional<RequestTuple> example) {
+        Properties props = new Properties();
+        props.setProperty("result", String.valueOf(result));
+        example.ifPresent(tuple -> {
+            props.setProperty("userPrincipal", tuple.userPrincipal());
+            props.setProperty("host", tuple.host());
+            props.setProperty("operation", tuple.operation().name());
+            props.setProperty("resourceType", tuple.resourceType().name());
+            props.setProperty("resourceName", tuple.resourceName());
+        });
+        try {
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, "result", ".tmp");
+            try {
+                try (OutputStream os = Files.newOutputStream(tmp)) {
+                    props.store(os, null);
+                }
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            evict();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Optional<RequestTuple> readExample(Properties props) {
+        if (!props.containsKey("userPrincipal")) {
+            return Optional.empty();
+        }
+        return Optional.of(RequestTuple.builder()
+                                       .userPrincipal(props.getProperty("userPrincipal"))
+                                       .host(props.getProperty("host"))
+                                       .operation(AclOperation.valueOf(props.getProperty("operation")))
+                                       .resourceType(ResourceType.valueOf(props.getProperty("resourceType")))
+                                       .resourceName(props.getProperty("resourceName"))
+                                       .build());
+    }
+
+    /**
+     * Delete least-recently-used results until the total size fits in maxBytes.
+     */
+    private void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, '*' + SUFFIX)) {
+            for (Path file : stream) {
+                try {
+                    total += Files.size(file);
+                    files.add(file);
+                } catch (NoSuchFileException e) {
+                    // evicted by another process
+                }
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(ResultCache::lastModified));
+        for (Path file : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            try {
+                total -= Files.size(file);
+                Files.delete(file);
+            } catch (NoSuchFileException e) {
+                // evicted by another process
+            }
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    private static byte[] canonicalize(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            AclConstraint constraint = entry.constraint();
+            out.writeByte(entry.permission().ordinal());
+            canonicalize(out, constraint.userPrincipal());
+            canonicalize(out, constraint.host());
+            out.writeByte(constraint.operation().op().ordinal());
+            out.writeByte(constraint.operation().value().code());
+            out.writeByte(constraint.resource().resourceType().code());
+            canonicalize(out, constraint.resource().resourceName());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void canonicalize(DataOutputStream out, StringCondition condition) throws IOException {
+        out.writeByte(condition.op().ordinal());
+        out.writeBoolean(condition.negate());
+        TreeSet<String> values = new TreeSet<>(condition.value());
+        out.writeInt(values.size());
+        for (String value : values) {
+            byte[] utf8 = value.getBytes(UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+}
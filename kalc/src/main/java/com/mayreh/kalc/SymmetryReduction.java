@@ -0,0 +1,290 @@
+package com.mayreh.kalc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.mayreh.kalc.AclConstraint.ResourceCondition;
+import com.mayreh.kalc.AclConstraint.StringCondition;
+import com.mayreh.kalc.AclConstraint.StringOperator;
+import com.mayreh.kalc.AclPolicy.Entry;
+
+/**
+ * Collapses literals which no condition of the policies can tell apart into a single representative.
+ *
+ * Two literals of a field are equivalent if swapping them maps every policy to itself, i.e. they appear
+ * in the same set of contexts (the policy, the permission and the rest of the entry with the literal
+ * left out of the field's condition) and no other condition on the field tells them apart.
+ * For example, entries which differ only by the principal collapse into one.
+ * The policies are rewritten so that In conditions refer only to representatives, which keeps
+ * the satisfiability of checks while the solver sees far fewer literals.
+ *
+ * A model of the reduced problem may assign a collapsed literal c to the field, which is no longer
+ * referenced by any In condition. Such value is mapped back to c + f + c where f is a character
+ * appearing in no condition. It satisfies the same StartWith / EndWith / Contain conditions as c
+ * since no value can span f, and no In condition.
+ */
+final class SymmetryReduction {
+    // indexes of the string fields in conditions(AclConstraint)
+    private static final int USER_PRINCIPAL = 0;
+    private static final int HOST = 1;
+    private static final int RESOURCE_NAME = 2;
+
+    private static final SymmetryReduction IDENTITY = new SymmetryReduction(
+            FieldReduction.IDENTITY, FieldReduction.IDENTITY, FieldReduction.IDENTITY);
+
+    private final FieldReduction userPrincipal;
+    private final FieldReduction host;
+    private final FieldReduction resourceName;
+
+    private SymmetryReduction(FieldReduction userPrincipal, FieldReduction host, FieldReduction resourceName) {
+        this.userPrincipal = userPrincipal;
+        this.host = host;
+        this.resourceName = resourceName;
+    }
+
+    static SymmetryReduction identity() {
+        return IDENTITY;
+    }
+
+    static SymmetryReduction of(AclPolicy... policies) {
+        return new SymmetryReduction(
+                FieldReduction.of(policies, USER_PRINCIPAL),
+                FieldReduction.of(policies, HOST),
+                FieldReduction.of(policies, RESOURCE_NAME));
+    }
+
+    private static List<Object> conditions(AclConstraint constraint) {
+        return Arrays.asList(constraint.userPrincipal(),
+                             constraint.host(),
+                             constraint.resource().resourceName(),
+                             constraint.operation(),
+                             constraint.resource().resourceType());
+    }
+
+    /**
+     * Number of literals collapsed into other literals.
+     */
+    int collapsed() {
+        return userPrincipal.collapsed() + host.collapsed() + resourceName.collapsed();
+    }
+
+    AclPolicy reduce(AclPolicy policy) {
+        if (collapsed() == 0) {
+            return policy;
+        }
+        List<Entry> entries = new ArrayList<>(policy.entries().size());
+        for (Entry entry : policy.entries()) {
+            AclConstraint constraint = entry.constraint();
+            StringCondition userPrincipalCondition = userPrincipal.reduce(constraint.userPrincipal());
+            StringCondition hostCondition = host.reduce(constraint.host());
+            StringCondition resourceNameCondition = resourceName.reduce(constraint.resource().resourceName());
+            if (userPrincipalCondition == constraint.userPrincipal()
+                && hostCondition == constraint.host()
+                && resourceNameCondition == constraint.resource().resourceName()) {
+                // keep the instance so that the encoding cache still hits
+                entries.add(entry);
+            } else {
+                entries.add(new Entry(
+                        entry.permission(),
+                        new AclConstraint(
+                                userPrincipalCondition,
+                                hostCondition,
+                                constraint.operation(),
+                                new ResourceCondition(
+                                        constraint.resource().resourceType(), resourceNameCondition))));
+            }
+        }
+        return new AclPolicy(entries);
+    }
+
+    /**
+     * Map the example of the reduced problem back to the example of the original problem.
+     */
+    RequestTuple expand(RequestTuple example) {
+        if (collapsed() == 0) {
+            return example;
+        }
+        return RequestTuple.builder()
+                           .userPrincipal(userPrincipal.expand(example.userPrincipal()))
+                           .host(host.expand(example.host()))
+                           .operation(example.operation())
+                           .resourceType(example.resourceType())
+                           .resourceName(resourceName.expand(example.resourceName()))
+                           .build();
+    }
+
+    private static final class FieldReduction {
+        static final FieldReduction IDENTITY =
+                new FieldReduction(Collections.emptyMap(), Collections.emptyMap(), '\uE000');
+
+        // collapsed literal to its representative. Representatives are not included
+        private final Map<String, String> representatives;
+        // cache of rewritten In conditions
+        private final Map<StringCondition, StringCondition> reduced;
+        private final char separator;
+
+        private FieldReduction(Map<String, String> representatives,
+                               Map<StringCondition, StringCondition> reduced,
+                               char separator) {
+            this.representatives = representatives;
+            this.reduced = reduced;
+            this.separator = separator;
+        }
+
+        static FieldReduction of(AclPolicy[] policies, int field) {
+            Set<StringCondition> inConditions = new LinkedHashSet<>();
+            Set<StringCondition> otherConditions = new LinkedHashSet<>();
+            Map<String, Set<List<Object>>> contexts = new LinkedHashMap<>();
+            for (int i = 0; i < policies.length; i++) {
+                for (Entry entry : policies[i].entries()) {
+                    List<Object> conditions = conditions(entry.constraint());
+                    StringCondition condition = (StringCondition) conditions.get(field);
+                    if (condition.value().contains(AclConstraint.WILDCARD)) {
+                        continue;
+                    }
+                    if (condition.op() != StringOperator.In) {
+                        otherConditions.add(condition);
+                        continue;
+                    }
+                    inConditions.add(condition);
+                    Set<String> values = new HashSet<>(condition.value());
+                    int valuesHash = values.hashCode();
+                    for (String value : values) {
+                        List<Object> context = new ArrayList<>(conditions);
+                        context.set(field, new Remaining(values, valuesHash, value));
+                        context.add(condition.negate());
+                        context.add(entry.permission());
+                        context.add(i);
+                        contexts.computeIfAbsent(value, v -> new HashSet<>()).add(context);
+                    }
+                }
+            }
+            if (contexts.size() < 2) {
+                return IDENTITY;
+            }
+
+            // literals in the same contexts can still be told apart by StartWith / EndWith / Contain conditions
+            Map<List<Object>, String> classes = new HashMap<>();
+            Map<String, String> representatives = new HashMap<>();
+            for (Map.Entry<String, Set<List<Object>>> literal : contexts.entrySet()) {
+                BitSet matches = new BitSet();
+                int i = 0;
+                for (StringCondition condition : otherConditions) {
+                    if (condition.matches(literal.getKey()) != condition.negate()) {
+                        matches.set(i);
+                    }
+                    i++;
+                }
+                String representative = classes.putIfAbsent(
+                        Arrays.asList(literal.getValue(), matches), literal.getKey());
+                if (representative != null) {
+                    representatives.put(literal.getKey(), representative);
+                }
+            }
+            if (representatives.isEmpty()) {
+                return IDENTITY;
+            }
+
+            Map<StringCondition, StringCondition> reduced = new HashMap<>();
+            for (StringCondition condition : inConditions) {
+                LinkedHashSet<String> values = new LinkedHashSet<>();
+                for (String value : condition.value()) {
+                    values.add(representatives.getOrDefault(value, value));
+                }
+                if (values.size() < condition.value().size()
+                    || !condition.value().containsAll(values)) {
+                    reduced.put(condition, new StringCondition(
+                            condition.negate(), StringOperator.In, new ArrayList<>(values)));
+                }
+            }
+            return new FieldReduction(representatives, reduced, separator(inConditions, otherConditions));
+        }
+
+        /**
+         * Find a character which appears in no value of the conditions, starting from the private use area.
+         */
+        private static char separator(Set<StringCondition> inConditions, Set<StringCondition> otherConditions) {
+            Set<Character> used = new HashSet<>();
+            for (Set<StringCondition> conditions : Arrays.asList(inConditions, otherConditions)) {
+                for (StringCondition condition : conditions) {
+                    for (String value : condition.value()) {
+                        for (int i = 0; i < value.length(); i++) {
+                            used.add(value.charAt(i));
+                        }
+                    }
+                }
+            }
+            char c = '\uE000';
+            while (used.contains(c)) {
+                c++;
+            }
+            return c;
+        }
+
+        int collapsed() {
+            return representatives.size();
+        }
+
+        StringCondition reduce(StringCondition condition) {
+            return reduced.getOrDefault(condition, condition);
+        }
+
+        String expand(String value) {
+            if (!representatives.containsKey(value)) {
+                return value;
+            }
+            return value + separator + value;
+        }
+    }
+
+    /**
+     * Values of an In condition with one literal left out.
+     * Compared without copying the values, since a condition may have many.
+     */
+    private static final class Remaining {
+        private final Set<String> values;
+        private final String excluded;
+        private final int hash;
+
+        Remaining(Set<String> values, int valuesHash, String excluded) {
+            this.values = values;
+            this.excluded = excluded;
+            hash = valuesHash - excluded.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Remaining)) {
+                return false;
+            }
+            Remaining other = (Remaining) o;
+            if (hash != other.hash || values.size() != other.values.size()) {
+                return false;
+            }
+            for (String value : values) {
+                if (!value.equals(excluded)
+                    && (value.equals(other.excluded) || !other.values.contains(value))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.mayreh.kalc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+
+import com.mayreh.kalc.AclConstraint.StringCondition;
+import com.mayreh.kalc.AclConstraint.StringOperator;
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.AclPolicy.Entry.PermissionType;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Decides intersection and superset without the solver for policies whose string conditions
+ * consist only of {@link StringOperator#In} and {@link StringOperator#StartWith} (possibly negated),
+ * which covers policies built by {@link AclPolicy#fromAclBindings}.
+ *
+ * For such conditions, whether a string is contained or not depends only on which literals it equals
+ * and which prefixes it starts with. Hence the search enumerates finite representative strings per field,
+ * one for each literal and one for each prefix extended by a character no other value continues with,
+ * and collapses representatives that are contained by the same set of entries.
+ */
+final class SyntacticChecker {
+    private static final int P1 = 0;
+    private static final int P2 = 1;
+    private static final List<Function<AclConstraint, StringCondition>> STRING_FIELDS = Arrays.asList(
+            AclConstraint::userPrincipal,
+            AclConstraint::host,
+            c -> c.resource().resourceName());
+
+    private final List<ResourceType> resourceTypes;
+    private final List<AclOperation> operations;
+
+    @RequiredArgsConstructor
+    private static class Item {
+        final int id;
+        final int policy;
+        final PermissionType permission;
+        final AclConstraint constraint;
+    }
+
+    private enum Goal {
+        Intersection,
+        Counterexample,
+    }
+
+    SyntacticChecker() {
+        this(Utils.CONCRETE_RESOURCE_TYPES, Utils.CONCRETE_OPERATIONS);
+    }
+
+    SyntacticChecker(PolicySlice slice) {
+        this(Collections.singletonList(slice.resourceType()),
+             Collections.singletonList(slice.operation()));
+    }
+
+    private SyntacticChecker(List<ResourceType> resourceTypes, List<AclOperation> operations) {
+        this.resourceTypes = resourceTypes;
+        this.operations = operations;
+    }
+
+    /**
+     * Returns true if the policy can be decided by this checker.
+     */
+    static boolean supports(AclPolicy policy) {
+        for (Entry entry : policy.entries()) {
+            AclConstraint constraint = entry.constraint();
+            if (!supports(constraint.userPrincipal()) ||
+                !supports(constraint.host()) ||
+                !supports(constraint.resource().resourceName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean supports(StringCondition condition) {
+        return condition.value().contains(AclConstraint.WILDCARD) ||
+               condition.op() == StringOperator.In ||
+               condition.op() == StringOperator.StartWith;
+    }
+
+    /**
+     * Returns a request-tuple contained by both policies if exists.
+     */
+    Optional<RequestTuple> findIntersection(AclPolicy p1, AclPolicy p2) {
+        return search(items(p1, p2), Goal.Intersection);
+    }
+
+    /**
+     * Returns a request-tuple contained by p2 but not by p1 if exists.
+     */
+    Optional<RequestTuple> findCounterexample(AclPolicy p1, AclPolicy p2) {
+        return search(items(p1, p2), Goal.Counterexample);
+    }
+
+    private static List<Item> items(AclPolicy p1, AclPolicy p2) {
+        List<Item> items = new ArrayList<>();
+        for (Entry entry : p1.entries()) {
+            items.add(new Item(items.size(), P1, entry.permission(), entry.constraint()));
+        }
+        for (Entry entry : p2.entries()) {
+            items.add(new Item(items.size(), P2, entry.permission(), entry.constraint()));
+        }
+        return items;
+    }
+
+    private Optional<RequestTuple> search(List<Item> items, Goal goal) {
+        if (!feasible(items, goal)) {
+            return Optional.empty();
+        }
+        for (ResourceType resourceType : resourceTypes) {
+            List<Item> byType = filter(items, i -> i.constraint.resource().resourceType() == resourceType);
+            if (!feasible(byType, goal)) {
+                continue;
+            }
+            for (AclOperation operation : operations) {
+                List<Item> byOperation = filter(byType, i -> i.constraint.operation().matches(operation));
+                if (!feasible(byOperation, goal)) {
+                    continue;
+                }
+                Optional<RequestTuple> result = searchStrings(
+                        byOperation, goal, 0, new String[3], resourceType, operation);
+                if (result.isPresent()) {
+                    return result;
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static Optional<RequestTuple> searchStrings(
+            List<Item> items, Goal goal, int field, String[] values,
+            ResourceType resourceType, AclOperation operation) {
+        if (field == STRING_FIELDS.size()) {
+            if (!satisfies(items, goal)) {
+                return Optional.empty();
+            }
+            return Optional.of(RequestTuple.builder()
+                                           .userPrincipal(values[0])
+                                           .host(values[1])
+                                           .operation(operation)
+                                           .resourceType(resourceType)
+                                           .resourceName(values[2])
+                                           .build());
+        }
+
+        Function<AclConstraint, StringCondition> getter = STRING_FIELDS.get(field);
+        Set<BitSet> visited = new HashSet<>();
+        for (String candidate : representatives(items, getter)) {
+            List<Item> matched = filter(items, i -> getter.apply(i.constraint).matches(candidate));
+            BitSet signature = new BitSet();
+            matched.forEach(i -> signature.set(i.id));
+            if (!visited.add(signature) || !feasible(matched, goal)) {
+                continue;
+            }
+            values[field] = candidate;
+            Optional<RequestTuple> result = searchStrings(
+                    matched, goal, field + 1, values, resourceType, operation);
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Returns strings which cover every combination of equalities and prefixes
+     * the conditions of the items can distinguish.
+     */
+    private static Set<String> representatives(
+            List<Item> items, Function<AclConstraint, StringCondition> getter) {
+        Set<String> literals = new LinkedHashSet<>();
+        Set<String> prefixes = new LinkedHashSet<>();
+        prefixes.add("");
+        for (Item item : items) {
+            StringCondition condition = getter.apply(item.constraint);
+            if (condition.value().contains(AclConstraint.WILDCARD)) {
+                continue;
+            }
+            if (condition.op() == StringOperator.In) {
+                literals.addAll(condition.value());
+            } else {
+                prefixes.addAll(condition.value());
+            }
+        }
+
+        Set<String> representatives = new LinkedHashSet<>(literals);
+        for (String prefix : prefixes) {
+            Set<Character> nextChars = new HashSet<>();
+            for (String value : literals) {
+                addNextChar(nextChars, prefix, value);
+            }
+            for (String value : prefixes) {
+                addNextChar(nextChars, prefix, value);
+            }
+            char c = 'a';
+            while (nextChars.contains(c)) {
+                c++;
+            }
+            representatives.add(prefix + c);
+        }
+        return representatives;
+    }
+
+    private static void addNextChar(Set<Character> nextChars, String prefix, String value) {
+        if (value.length() > prefix.length() && value.startsWith(prefix)) {
+            nextChars.add(value.charAt(prefix.length()));
+        }
+    }
+
+    /**
+     * Returns true if the goal may be satisfied by some point contained by the items.
+     * Since any point in the goal must be allowed by p2 (and also by p1 for the intersection),
+     * items must contain corresponding Allow entries.
+     */
+    private static boolean feasible(List<Item> items, Goal goal) {
+        boolean allow1 = false;
+        boolean allow2 = false;
+        for (Item item : items) {
+            if (item.permission == PermissionType.Allow) {
+                allow1 |= item.policy == P1;
+                allow2 |= item.policy == P2;
+            }
+        }
+        return allow2 && (goal == Goal.Counterexample || allow1);
+    }
+
+    /**
+     * Evaluate the goal for a point, given the items are exactly the entries which contain the point.
+     */
+    private static boolean satisfies(List<Item> items, Goal goal) {
+        boolean[] allowed = new boolean[2];
+        boolean[] denied = new boolean[2];
+        for (Item item : items) {
+            if (item.permission == PermissionType.Allow) {
+                allowed[item.policy] = true;
+            } else {
+                denied[item.policy] = true;
+            }
+        }
+        boolean in1 = allowed[P1] && !denied[P1];
+        boolean in2 = allowed[P2] && !denied[P2];
+        return goal == Goal.Intersection ? in1 && in2 : in2 && !in1;
+    }
+
+    private static List<Item> filter(List<Item> items, Predicate<Item> predicate) {
+        List<Item> result = new ArrayList<>();
+        for (Item item : items) {
+            if (predicate.test(item)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+}
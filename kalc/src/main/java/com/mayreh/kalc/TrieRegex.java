@@ -0,0 +1,112 @@
+package com.mayreh.kalc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.microsoft.z3.CharSort;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.ReExpr;
+import com.microsoft.z3.SeqSort;
+
+/**
+ * Compiles prefixes, suffixes or substrings into a single trie-shaped regular expression,
+ * so that a multi-valued {@link AclConstraint.StringCondition} is asserted by one membership constraint
+ * instead of a disjunction of string constraints.
+ *
+ * Values subsumed by shorter ones (e.g. prefix "foo-bar" by "foo-") are dropped
+ * and chains of single-child nodes are merged into one string.
+ */
+final class TrieRegex {
+    private final Context context;
+    private final ReExpr<SeqSort<CharSort>> all;
+
+    private static class Node {
+        private final Map<Character, Node> children = new TreeMap<>();
+        private boolean terminal;
+    }
+
+    TrieRegex(Context context) {
+        this.context = context;
+        all = context.mkFullRe(context.mkReSort(context.getStringSort()));
+    }
+
+    /**
+     * Strings which start with any of the values
+     */
+    ReExpr<SeqSort<CharSort>> startWith(Collection<String> values) {
+        return compile(trie(values, false), false);
+    }
+
+    /**
+     * Strings which end with any of the values
+     */
+    ReExpr<SeqSort<CharSort>> endWith(Collection<String> values) {
+        return compile(trie(values, true), true);
+    }
+
+    /**
+     * Strings which contain any of the values
+     */
+    ReExpr<SeqSort<CharSort>> contain(Collection<String> values) {
+        return context.mkConcat(all, startWith(values));
+    }
+
+    /**
+     * Build the trie of values. For suffixes, the trie is built over reversed values.
+     */
+    private static Node trie(Collection<String> values, boolean reverse) {
+        Node root = new Node();
+        for (String value : values) {
+            Node node = root;
+            for (int i = 0; i < value.length() && !node.terminal; i++) {
+                char c = value.charAt(reverse ? value.length() - 1 - i : i);
+                node = node.children.computeIfAbsent(c, k -> new Node());
+            }
+            node.terminal = true;
+        }
+        return root;
+    }
+
+    /**
+     * Strings accepted from the node, which is any string if a value ends at the node,
+     * or the union of each edge followed by the child otherwise.
+     * For suffixes, the edge comes after the child instead.
+     */
+    private ReExpr<SeqSort<CharSort>> compile(Node node, boolean reverse) {
+        if (node.terminal) {
+            return all;
+        }
+        List<ReExpr<SeqSort<CharSort>>> branches = new ArrayList<>(node.children.size());
+        for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+            StringBuilder label = new StringBuilder().append(child.getKey());
+            Node next = child.getValue();
+            while (!next.terminal && next.children.size() == 1) {
+                Map.Entry<Character, Node> only = next.children.entrySet().iterator().next();
+                label.append(only.getKey());
+                next = only.getValue();
+            }
+            ReExpr<SeqSort<CharSort>> rest = compile(next, reverse);
+            if (reverse) {
+                branches.add(context.mkConcat(rest, toRe(label.reverse().toString())));
+            } else {
+                branches.add(context.mkConcat(toRe(label.toString()), rest));
+            }
+        }
+        return union(branches);
+    }
+
+    private ReExpr<SeqSort<CharSort>> toRe(String str) {
+        return context.mkToRe(context.mkString(str));
+    }
+
+    @SuppressWarnings("unchecked")
+    private ReExpr<SeqSort<CharSort>> union(List<ReExpr<SeqSort<CharSort>>> branches) {
+        if (branches.size() == 1) {
+            return branches.get(0);
+        }
+        return context.mkUnion((ReExpr<SeqSort<CharSort>>[]) branches.toArray(new ReExpr<?>[0]));
+    }
+}
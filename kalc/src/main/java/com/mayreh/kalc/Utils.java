@@ -1,8 +1,38 @@
 package com.mayreh.kalc;
 
+import static java.util.stream.Collectors.toList;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 
-class Utils {
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+
+public final class Utils {
+    /**
+     * Resource types which a request-tuple can take
+     */
+    static final List<ResourceType> CONCRETE_RESOURCE_TYPES =
+            Arrays.stream(ResourceType.values())
+                  .filter(t -> t != ResourceType.ANY && t != ResourceType.UNKNOWN)
+                  .collect(toList());
+
+    /**
+     * Operations which a request-tuple can take
+     */
+    static final List<AclOperation> CONCRETE_OPERATIONS =
+            Arrays.stream(AclOperation.values())
+                  .filter(o -> o != AclOperation.ANY && o != AclOperation.UNKNOWN && o != AclOperation.ALL)
+                  .collect(toList());
+
+    private Utils() {}
+
     @SafeVarargs
     static <T> T requireNoneOf(T value, T... excludes) {
         for (T exclude : excludes) {
@@ -19,4 +49,38 @@ class Utils {
         }
         return value;
     }
+
+    /**
+     * Fixed thread pool of daemon threads named name-1, name-2, ...,
+     * so that the pool never blocks JVM shutdown even if it's not shut down explicitly.
+     */
+    public static ExecutorService daemonThreadPool(String name, int threads) {
+        AtomicInteger threadId = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, name + '-' + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Lower-case hex representation of the bytes, e.g. of a digest.
+     */
+    public static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
 }
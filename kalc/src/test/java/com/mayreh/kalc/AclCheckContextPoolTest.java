@@ -0,0 +1,277 @@
+package com.mayreh.kalc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.kafka.common.acl.AclBinding;
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+import org.junit.Test;
+
+import com.mayreh.kalc.AclCheckContext.IntersectionResult;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+
+public class AclCheckContextPoolTest {
+    private static final AclPolicy POLICY = AclPolicy.fromAclBindings(
+            Arrays.asList(
+                    AclBindingBuilder
+                            .allow()
+                            .userPrincipal("admin")
+                            .literal(ResourceType.TOPIC, "*")
+                            .operation(AclOperation.ALL)
+                            .build(),
+                    AclBindingBuilder
+                            .allow()
+                            .literal(ResourceType.TOPIC, "*")
+                            .operation(AclOperation.DESCRIBE)
+                            .build(),
+                    AclBindingBuilder
+                            .allow()
+                            .userPrincipal("foo-producer")
+                            .prefixed(ResourceType.TOPIC, "foo-")
+                            .operation(AclOperation.WRITE)
+                            .build(),
+                    AclBindingBuilder
+                            .deny()
+                            .userPrincipal("foo-producer")
+                            .literal(ResourceType.TOPIC, "foo-secret")
+                            .operation(AclOperation.ALL)
+                            .build()));
+
+    private static final AclPolicy FOO_WRITE = new AclConstraintBuilder()
+            .userPrincipal(u -> u.in("foo"))
+            .host(h -> h.in("*"))
+            .operation(AclOperation.WRITE)
+            .resource(ResourceType.TOPIC, r -> r.startWith("foo-"))
+            .build().toPolicy();
+
+    @Test
+    public void testExclusiveHandOut() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (AclCheckContextPool pool = new AclCheckContextPool(
+                2, AclCheckOptions.defaults(), Duration.ofMillis(100))) {
+            Set<AclCheckContext> contexts = Collections.synchronizedSet(
+                    Collections.newSetFromMap(new IdentityHashMap<>()));
+            CountDownLatch acquired = new CountDownLatch(2);
+            CountDownLatch done = new CountDownLatch(1);
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                futures.add(executor.submit(() -> pool.execute(ctx -> {
+                    contexts.add(ctx);
+                    acquired.countDown();
+                    try {
+                        done.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return ctx.intersection(FOO_WRITE, FOO_WRITE).intersects();
+                })));
+            }
+            acquired.await();
+            assertEquals(2, contexts.size());
+
+            // every context is in use, so acquisition times out
+            assertThrows(IllegalStateException.class, () -> pool.execute(ctx -> null));
+
+            done.countDown();
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+            // released contexts are handed out again
+            assertTrue(contexts.contains(pool.execute(ctx -> ctx)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCloseWhileInUse() {
+        AclCheckContextPool pool = new AclCheckContextPool(1);
+        boolean intersects = pool.execute(ctx -> {
+            pool.close();
+            // the context in use is closed only after it's released
+            return ctx.intersection(FOO_WRITE, FOO_WRITE).intersects();
+        });
+        assertTrue(intersects);
+        assertThrows(IllegalStateException.class, () -> pool.execute(ctx -> null));
+    }
+
+    @Test
+    public void testCancelSubmittedCheck() throws Exception {
+        try (AclCheckContextPool pool = new AclCheckContextPool(1)) {
+            CountDownLatch started = new CountDownLatch(1);
+            List<AclCheckContext> contexts = new ArrayList<>();
+            Future<Boolean> future = pool.submit(ctx -> {
+                contexts.add(ctx);
+                started.countDown();
+                try {
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return true;
+            });
+            started.await();
+            assertTrue(future.cancel(true));
+
+            // the interrupted context is replaced with a new one
+            AclCheckContext next = pool.execute(ctx -> {
+                assertTrue(ctx.intersection(FOO_WRITE, FOO_WRITE).intersects());
+                return ctx;
+            });
+            assertNotSame(contexts.get(0), next);
+            assertTrue(pool.submit(ctx -> ctx.intersection(FOO_WRITE, FOO_WRITE).intersects()).get());
+        }
+    }
+
+    @Test
+    public void testRecycleContextWithExhaustedFiniteDomains() {
+        AclCheckOptions options = AclCheckOptions.builder()
+                                                 .syntacticEngine(false)
+                                                 .finiteDomainEncoding(true)
+                                                 .maxFiniteDomains(1)
+                                                 .build();
+        try (AclCheckContextPool pool = new AclCheckContextPool(1, options, Duration.ofSeconds(10))) {
+            AclCheckContext first = pool.execute(ctx -> {
+                assertTrue(ctx.intersection(FOO_WRITE, FOO_WRITE).intersects());
+                return ctx;
+            });
+            // the context declared a sort for the principal, so it's replaced on release
+            AclCheckContext second = pool.execute(ctx -> {
+                assertTrue(ctx.intersection(FOO_WRITE, FOO_WRITE).intersects());
+                return ctx;
+            });
+            assertNotSame(first, second);
+        }
+    }
+
+    @Test
+    public void testIntersection() {
+        try (AclCheckContextPool pool = new AclCheckContextPool(2)) {
+            IntersectionResult result = pool.intersection(
+                    POLICY,
+                    new AclConstraintBuilder()
+                            .userPrincipal(u -> u.in("foo-producer"))
+                            .host(h -> h.in("*"))
+                            .operation(AclOperation.WRITE)
+                            .resource(ResourceType.TOPIC, r -> r.startWith("foo-"))
+                            .build().toPolicy());
+            assertTrue(result.intersects());
+            assertEquals(AclOperation.WRITE, result.example().get().operation());
+            assertTrue(POLICY.authorizes(result.example().get()));
+
+            assertFalse(pool.intersection(
+                    POLICY,
+                    new AclConstraintBuilder()
+                            .userPrincipal(u -> u.in("foo-producer"))
+                            .host(h -> h.in("*"))
+                            .operation(AclOperation.WRITE)
+                            .resource(ResourceType.TOPIC, r -> r.in("foo-secret"))
+                            .build().toPolicy()).intersects());
+        }
+    }
+
+    @Test
+    public void testSupersetOf() {
+        try (AclCheckContextPool pool = new AclCheckContextPool(2)) {
+            assertTrue(pool.supersetOf(
+                    POLICY,
+                    new AclConstraintBuilder()
+                            .userPrincipal(u -> u.in("foo-producer"))
+                            .host(h -> h.in("*"))
+                            .operation(AclOperation.WRITE)
+                            .resource(ResourceType.TOPIC, r -> r.in("foo-bar"))
+                            .build().toPolicy()).isSuperset());
+
+            SupersetResult result = pool.supersetOf(
+                    POLICY,
+                    new AclConstraintBuilder()
+                            .userPrincipal(u -> u.in("foo-producer"))
+                            .host(h -> h.in("*"))
+                            .notOperation(AclOperation.DESCRIBE)
+                            .resource(ResourceType.TOPIC, r -> r.startWith("foo-"))
+                            .build().toPolicy());
+            assertFalse(result.isSuperset());
+            assertFalse(POLICY.authorizes(result.counterexample().get()));
+            assertEquals(Optional.of(0), result.uncoveredEntry());
+        }
+    }
+
+    @Test
+    public void testSupersetOfReportsUncoveredEntry() {
+        AclPolicy target = AclPolicy.fromAclBindings(
+                Arrays.asList(
+                        AclBindingBuilder
+                                .allow()
+                                .userPrincipal("foo-producer")
+                                .literal(ResourceType.TOPIC, "foo-bar")
+                                .operation(AclOperation.WRITE)
+                                .build(),
+                        // denied in the target itself, so it doesn't have to be covered
+                        AclBindingBuilder
+                                .deny()
+                                .userPrincipal("foo-producer")
+                                .literal(ResourceType.TOPIC, "foo-secret")
+                                .operation(AclOperation.ALL)
+                                .build(),
+                        AclBindingBuilder
+                                .allow()
+                                .userPrincipal("foo-producer")
+                                .literal(ResourceType.TOPIC, "foo-secret")
+                                .operation(AclOperation.WRITE)
+                                .build(),
+                        AclBindingBuilder
+                                .allow()
+                                .userPrincipal("foo-producer")
+                                .literal(ResourceType.GROUP, "foo-group")
+                                .operation(AclOperation.READ)
+                                .build()));
+        try (AclCheckContextPool pool = new AclCheckContextPool(2)) {
+            SupersetResult result = pool.supersetOf(POLICY, target);
+            assertFalse(result.isSuperset());
+            assertEquals(Optional.of(3), result.uncoveredEntry());
+            assertEquals(ResourceType.GROUP, result.counterexample().get().resourceType());
+            assertTrue(target.authorizes(result.counterexample().get()));
+        }
+    }
+
+    @Test
+    public void testCancelledChecksDoNotAffectSubsequentChecks() {
+        List<AclBinding> bindings = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            bindings.add(AclBindingBuilder
+                                 .allow()
+                                 .userPrincipal("bar-" + i)
+                                 .prefixed(ResourceType.TOPIC, "bar-")
+                                 .operation(AclOperation.READ)
+                                 .build());
+        }
+        AclPolicy target = AclPolicy.fromAclBindings(bindings);
+        try (AclCheckContextPool pool = new AclCheckContextPool(
+                2, AclCheckOptions.defaults(), Duration.ofSeconds(10))) {
+            // every sub-check finds a counterexample, so the others are interrupted on the first one
+            for (int i = 0; i < 5; i++) {
+                SupersetResult result = pool.supersetOf(POLICY, target);
+                assertFalse(result.isSuperset());
+                assertTrue(target.authorizes(result.counterexample().get()));
+                assertFalse(pool.intersection(POLICY, target).intersects());
+            }
+        }
+    }
+}
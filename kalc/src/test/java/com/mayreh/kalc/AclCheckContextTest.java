@@ -1,15 +1,31 @@
 package com.mayreh.kalc;
 
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Consumer;
 
+import org.apache.kafka.common.acl.AclBinding;
 import org.apache.kafka.common.acl.AclOperation;
 import org.apache.kafka.common.resource.ResourceType;
 import org.junit.Test;
 
+import com.mayreh.kalc.AclCheckContext.DiffResult;
+import com.mayreh.kalc.AclCheckContext.Engine;
+import com.mayreh.kalc.AclCheckContext.IntersectionResult;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.EnumerationOptions.Field;
+
 public class AclCheckContextTest {
     @Test
     public void testAllow() {
@@ -177,6 +193,535 @@ public class AclCheckContextTest {
         });
     }
 
+    @Test
+    public void testBaseCheck() {
+        withContext(ctx -> {
+            AclPolicy policy = AclPolicy.fromAclBindings(
+                    Arrays.asList(
+                            AclBindingBuilder
+                                    .allow()
+                                    .userPrincipal("admin")
+                                    .literal(ResourceType.TOPIC, "*")
+                                    .operation(AclOperation.ALL)
+                                    .build(),
+                            AclBindingBuilder
+                                    .allow()
+                                    .userPrincipal("foo-producer")
+                                    .literal(ResourceType.TOPIC, "foo-topic")
+                                    .operation(AclOperation.WRITE)
+                                    .build()));
+
+            AclPolicy fooWrite = new AclConstraintBuilder()
+                    .userPrincipal(u -> u.in("foo-producer"))
+                    .host(h -> h.in("*"))
+                    .operation(AclOperation.WRITE)
+                    .resource(ResourceType.TOPIC, r -> r.in("foo-topic"))
+                    .build().toPolicy();
+            AclPolicy anyWrite = new AclConstraintBuilder()
+                    .userPrincipal(u -> u.in("*"))
+                    .host(h -> h.in("*"))
+                    .operation(AclOperation.WRITE)
+                    .resource(ResourceType.TOPIC, r -> r.in("foo-topic"))
+                    .build().toPolicy();
+            AclPolicy barWrite = new AclConstraintBuilder()
+                    .userPrincipal(u -> u.in("foo-producer"))
+                    .host(h -> h.in("*"))
+                    .operation(AclOperation.WRITE)
+                    .resource(ResourceType.TOPIC, r -> r.in("bar-topic"))
+                    .build().toPolicy();
+
+            AclCheckContext.BaseCheck check = ctx.withBase(policy);
+            assertTrue(check.intersection(fooWrite).intersects());
+            assertFalse(check.intersection(barWrite).intersects());
+            assertTrue(check.supersetOf(fooWrite).isSuperset());
+            assertFalse(check.supersetOf(anyWrite).isSuperset());
+            assertFalse(check.supersetOf(barWrite).isSuperset());
+
+            // state must not leak between targets
+            assertEquals(Arrays.asList(true, false, true),
+                         check.intersection(Arrays.asList(fooWrite, barWrite, fooWrite))
+                              .stream()
+                              .map(IntersectionResult::intersects)
+                              .collect(toList()));
+        });
+    }
+
+    @Test
+    public void testSyntacticEngine() {
+        AclPolicy policy = AclPolicy.fromAclBindings(
+                Arrays.asList(
+                        AclBindingBuilder
+                                .allow()
+                                .userPrincipal("admin")
+                                .literal(ResourceType.TOPIC, "*")
+                                .operation(AclOperation.ALL)
+                                .build(),
+                        AclBindingBuilder
+                                .allow()
+                                .userPrincipal("foo-producer")
+                                .prefixed(ResourceType.TOPIC, "foo-")
+                                .operation(AclOperation.WRITE)
+                                .build(),
+                        AclBindingBuilder
+                                .deny()
+                                .userPrincipal("foo-producer")
+                                .prefixed(ResourceType.TOPIC, "foo-internal-")
+                                .operation(AclOperation.ALL)
+                                .build()));
+        AclPolicy[] targets = {
+                new AclConstraintBuilder()
+                        .userPrincipal(u -> u.in("foo-producer"))
+                        .host(h -> h.in("*"))
+                        .operation(AclOperation.WRITE)
+                        .resource(ResourceType.TOPIC, r -> r.startWith("foo-"))
+                        .build().toPolicy(),
+                new AclConstraintBuilder()
+                        .userPrincipal(u -> u.in("foo-producer"))
+                        .host(h -> h.in("*"))
+                        .operation(AclOperation.WRITE)
+                        .resource(ResourceType.TOPIC, r -> r.startWith("foo-internal-"))
+                        .build().toPolicy(),
+                new AclConstraintBuilder()
+                        .userPrincipal(u -> u.in("foo-producer"))
+                        .host(h -> h.in("*"))
+                        .operation(AclOperation.WRITE)
+                        .resource(ResourceType.TOPIC, r -> r.in("foo-bar"))
+                        .build().toPolicy(),
+                new AclConstraintBuilder()
+                        .userPrincipal(u -> u.in("admin").negate())
+                        .host(h -> h.in("*"))
+                        .operation(AclOperation.READ)
+                        .resource(ResourceType.TOPIC, r -> r.in("*"))
+                        .build().toPolicy(),
+        };
+
+        try (AclCheckContext syntactic = new AclCheckContext();
+             AclCheckContext solver = new AclCheckContext(
+                     AclCheckOptions.builder().syntacticEngine(false).build())) {
+            for (AclPolicy target : targets) {
+                IntersectionResult intersection = syntactic.intersection(policy, target);
+                assertEquals(Engine.Syntactic, intersection.engine());
+                assertEquals(solver.intersection(policy, target).intersects(), intersection.intersects());
+                intersection.example().ifPresent(e -> assertTrue(policy.authorizes(e) && target.authorizes(e)));
+
+                SupersetResult superset = syntactic.supersetOf(policy, target);
+                assertEquals(Engine.Syntactic, superset.engine());
+                assertEquals(solver.supersetOf(policy, target).isSuperset(), superset.isSuperset());
+                superset.counterexample().ifPresent(e -> assertTrue(!policy.authorizes(e) && target.authorizes(e)));
+            }
+        }
+    }
+
+    @Test
+    public void testMinimize() {
+        withContext(ctx -> {
+            AclPolicy policy = AclPolicy.fromAclBindings(
+                    Arrays.asList(
+                            AclBindingBuilder
+                                    .allow()
+                                    .userPrincipal("foo")
+                                    .prefixed(ResourceType.TOPIC, "foo-")
+                                    .operation(AclOperation.ALL)
+                                    .build(),
+                            // covered by prefixed ALL
+                            AclBindingBuilder
+                                    .allow()
+                                    .userPrincipal("foo")
+                                    .host("192.0.2.1")
+                                    .literal(ResourceType.TOPIC, "foo-bar")
+                                    .operation(AclOperation.WRITE)
+                                    .build(),
+                            AclBindingBuilder
+                                    .allow()
+                                    .userPrincipal("bar")
+                                    .literal(ResourceType.TOPIC, "bar")
+                                    .operation(AclOperation.READ)
+                                    .build(),
+                            // no Allow entry for GROUP
+                            AclBindingBuilder
+                                    .deny()
+                                    .userPrincipal("bar")
+                                    .literal(ResourceType.GROUP, "bar")
+                                    .operation(AclOperation.READ)
+                                    .build(),
+                            // not syntactically covered, but bar is only allowed to READ
+                            AclBindingBuilder
+                                    .deny()
+                                    .userPrincipal("bar")
+                                    .literal(ResourceType.TOPIC, "bar")
+                                    .operation(AclOperation.WRITE)
+                                    .build()));
+
+            AclPolicy syntactic = policy.minimize();
+            assertEquals(3, syntactic.entries().size());
+
+            AclPolicy minimized = ctx.minimize(policy);
+            assertEquals(Arrays.asList(policy.entries().get(0), policy.entries().get(2)),
+                         minimized.entries());
+            assertTrue(ctx.supersetOf(policy, minimized).isSuperset());
+            assertTrue(ctx.supersetOf(minimized, policy).isSuperset());
+        });
+    }
+
+    @Test
+    public void testResourceLimit() {
+        AclPolicy policy = new AclConstraintBuilder()
+                .userPrincipal(u -> u.endWith("-producer"))
+                .host(h -> h.in("*"))
+                .operation(AclOperation.WRITE)
+                .resource(ResourceType.TOPIC, r -> r.contain("-logs-"))
+                .build().toPolicy();
+        AclPolicy target = new AclConstraintBuilder()
+                .userPrincipal(u -> u.startWith("app-"))
+                .host(h -> h.in("*"))
+                .operation(AclOperation.WRITE)
+                .resource(ResourceType.TOPIC, r -> r.endWith("-logs"))
+                .build().toPolicy();
+
+        AclCheckOptions options = AclCheckOptions.builder()
+                                                 .syntacticEngine(false)
+                                                 .resourceLimit(1)
+                                                 .build();
+        try (AclCheckContext ctx = new AclCheckContext(options)) {
+            IntersectionResult intersection = ctx.intersection(policy, target);
+            assertTrue(intersection.unknown());
+            assertFalse(intersection.intersects());
+            assertFalse(intersection.example().isPresent());
+            assertTrue(intersection.unknownReason().isPresent());
+
+            SupersetResult superset = ctx.supersetOf(policy, target);
+            assertTrue(superset.unknown());
+            assertFalse(superset.isSuperset());
+            assertTrue(superset.unknownReason().isPresent());
+        }
+    }
+
+    @Test
+    public void testDiff() {
+        withContext(ctx -> {
+            AclBinding fooRead = AclBindingBuilder
+                    .allow()
+                    .userPrincipal("foo")
+                    .literal(ResourceType.TOPIC, "foo")
+                    .operation(AclOperation.READ)
+                    .build();
+            AclBinding fooAll = AclBindingBuilder
+                    .allow()
+                    .userPrincipal("foo")
+                    .prefixed(ResourceType.TOPIC, "foo")
+                    .operation(AclOperation.ALL)
+                    .build();
+            AclBinding barRead = AclBindingBuilder
+                    .allow()
+                    .userPrincipal("bar")
+                    .literal(ResourceType.GROUP, "bar")
+                    .operation(AclOperation.READ)
+                    .build();
+
+            AclPolicy oldPolicy = AclPolicy.fromAclBindings(Arrays.asList(fooRead, barRead));
+
+            // reordering is not a change
+            DiffResult same = ctx.diff(oldPolicy, AclPolicy.fromAclBindings(Arrays.asList(barRead, fooRead)));
+            assertTrue(same.diff().isEmpty());
+            assertTrue(same.equivalent());
+
+            // redundant entry doesn't change the semantics
+            DiffResult redundant = ctx.diff(
+                    oldPolicy, AclPolicy.fromAclBindings(Arrays.asList(fooRead, barRead, fooRead)));
+            assertEquals(1, redundant.diff().added().size());
+            assertTrue(redundant.equivalent());
+
+            DiffResult widened = ctx.diff(oldPolicy, AclPolicy.fromAclBindings(Arrays.asList(fooAll, barRead)));
+            assertEquals(1, widened.diff().added().size());
+            assertEquals(1, widened.diff().removed().size());
+            assertTrue(widened.gained().isPresent());
+            assertFalse(widened.lost().isPresent());
+            assertFalse(widened.equivalent());
+        });
+    }
+
+    @Test
+    public void testEnumerateExamples() {
+        withContext(ctx -> {
+            AclPolicy base = AclPolicy.fromAclBindings(
+                    Arrays.asList(
+                            AclBindingBuilder
+                                    .allow()
+                                    .literal(ResourceType.TOPIC, "*")
+                                    .operation(AclOperation.READ)
+                                    .build(),
+                            AclBindingBuilder
+                                    .deny()
+                                    .userPrincipal("baz")
+                                    .literal(ResourceType.TOPIC, "*")
+                                    .operation(AclOperation.ALL)
+                                    .build()));
+            AclPolicy target = new AclConstraintBuilder()
+                    .userPrincipal(u -> u.in("foo", "bar", "baz", "qux"))
+                    .host(h -> h.in("*"))
+                    .operation(AclOperation.READ)
+                    .resource(ResourceType.TOPIC, r -> r.endWith("-logs"))
+                    .build().toPolicy();
+
+            EnumerationOptions byPrincipal = EnumerationOptions
+                    .builder()
+                    .distinctBy(EnumSet.of(Field.UserPrincipal))
+                    .build();
+            Set<String> principals = ctx.intersectionExamples(base, target, byPrincipal)
+                                        .map(RequestTuple::userPrincipal)
+                                        .collect(toSet());
+            assertEquals(new HashSet<>(Arrays.asList("foo", "bar", "qux")), principals);
+
+            List<RequestTuple> counterexamples = ctx.supersetCounterexamples(base, target, byPrincipal)
+                                                    .collect(toList());
+            assertEquals(1, counterexamples.size());
+            assertEquals("baz", counterexamples.get(0).userPrincipal());
+
+            // resource names are unbounded, so enumeration stops at the limit
+            EnumerationOptions limited = EnumerationOptions.builder().limit(5).build();
+            assertEquals(5, ctx.intersectionExamples(base, target, limited).distinct().count());
+        });
+    }
+
+    @Test
+    public void testCollectStats() {
+        AclPolicy p1 = new AclConstraintBuilder()
+                .userPrincipal(u -> u.endWith("-producer"))
+                .host(h -> h.in("*"))
+                .operation(AclOperation.WRITE)
+                .resource(ResourceType.TOPIC, r -> r.in("*"))
+                .build().toPolicy();
+        AclPolicy p2 = new AclConstraintBuilder()
+                .userPrincipal(u -> u.in("foo-producer"))
+                .host(h -> h.in("*"))
+                .operation(AclOperation.WRITE)
+                .resource(ResourceType.TOPIC, r -> r.startWith("foo-"))
+                .build().toPolicy();
+
+        try (AclCheckContext ctx = new AclCheckContext(
+                AclCheckOptions.builder().collectStats(true).build())) {
+            SupersetResult result = ctx.supersetOf(p1, p2);
+            assertTrue(result.isSuperset());
+            CheckStats stats = result.stats().get();
+            assertEquals(2, stats.entries());
+            assertTrue(stats.astNodes() > 0);
+            assertFalse(stats.solverStatistics().isEmpty());
+        }
+        withContext(ctx -> assertFalse(ctx.supersetOf(p1, p2).stats().isPresent()));
+    }
+
+    @Test
+    public void testFiniteDomainEncoding() {
+        AclPolicy policy = AclPolicy.fromAclBindings(
+                Arrays.asList(
+                        AclBindingBuilder
+                                .allow()
+                                .userPrincipal("foo")
+                                .literal(ResourceType.TOPIC, "foo-topic")
+                                .operation(AclOperation.READ)
+                                .build(),
+                        AclBindingBuilder
+                                .allow()
+                                .userPrincipal("bar")
+                                .literal(ResourceType.TOPIC, "foo-topic")
+                                .operation(AclOperation.READ)
+                                .build(),
+                        AclBindingBuilder
+                                .deny()
+                                .userPrincipal("bar")
+                                .host("192.0.2.1")
+                                .literal(ResourceType.TOPIC, "foo-topic")
+                                .operation(AclOperation.ALL)
+                                .build()));
+        AclPolicy target = new AclConstraintBuilder()
+                .userPrincipal(u -> u.in("baz").negate())
+                .host(h -> h.in("*"))
+                .operation(AclOperation.READ)
+                .resource(ResourceType.TOPIC, r -> r.in("foo-topic"))
+                .build().toPolicy();
+
+        AclCheckOptions options = AclCheckOptions.builder()
+                                                 .syntacticEngine(false)
+                                                 .finiteDomainEncoding(true)
+                                                 .build();
+        try (AclCheckContext ctx = new AclCheckContext(options)) {
+            IntersectionResult intersection = ctx.intersection(policy, target);
+            assertTrue(intersection.intersects());
+            assertEquals("foo-topic", intersection.example().get().resourceName());
+
+            SupersetResult superset = ctx.supersetOf(policy, target);
+            assertFalse(superset.isSuperset());
+            RequestTuple counterexample = superset.counterexample().get();
+            assertFalse(policy.authorizes(counterexample));
+            assertTrue(target.authorizes(counterexample));
+        }
+    }
+
+    @Test
+    public void testRegexEncoding() {
+        AclPolicy policy = new AclConstraintBuilder()
+                .userPrincipal(u -> u.endWith("-producer", "-consumer", "-streams-consumer"))
+                .host(h -> h.contain(".internal.", ".dev."))
+                .operation(AclOperation.WRITE)
+                .resource(ResourceType.TOPIC, r -> r.startWith("foo-", "bar-", "foo-internal-"))
+                .build().toPolicy();
+        AclConstraintBuilder target = new AclConstraintBuilder()
+                .userPrincipal(u -> u.in("User:app-streams-consumer"))
+                .host(h -> h.in("broker.internal.example"))
+                .operation(AclOperation.WRITE);
+
+        AclCheckOptions options = AclCheckOptions.builder()
+                                                 .syntacticEngine(false)
+                                                 .regexEncoding(true)
+                                                 .build();
+        try (AclCheckContext ctx = new AclCheckContext(options)) {
+            assertTrue(ctx.supersetOf(
+                    policy,
+                    target.resource(ResourceType.TOPIC, r -> r.startWith("bar-x")).build().toPolicy()
+            ).isSuperset());
+            assertFalse(ctx.supersetOf(
+                    policy,
+                    target.resource(ResourceType.TOPIC, r -> r.in("baz-x")).build().toPolicy()
+            ).isSuperset());
+            assertFalse(ctx.intersection(
+                    policy,
+                    new AclConstraintBuilder()
+                            .userPrincipal(u -> u.endWith("-producer", "-consumer").negate())
+                            .host(h -> h.in("*"))
+                            .operation(AclOperation.WRITE)
+                            .resource(ResourceType.TOPIC, r -> r.in("*"))
+                            .build().toPolicy()
+            ).intersects());
+        }
+    }
+
+    @Test
+    public void testExplain() {
+        AclBinding fooAll = AclBindingBuilder
+                .allow()
+                .userPrincipal("foo")
+                .prefixed(ResourceType.TOPIC, "foo")
+                .operation(AclOperation.ALL)
+                .build();
+        AclBinding fooRead = AclBindingBuilder
+                .allow()
+                .userPrincipal("foo")
+                .literal(ResourceType.TOPIC, "foo")
+                .operation(AclOperation.READ)
+                .build();
+        AclBinding barRead = AclBindingBuilder
+                .allow()
+                .userPrincipal("bar")
+                .literal(ResourceType.GROUP, "bar")
+                .operation(AclOperation.READ)
+                .build();
+        AclBinding denyFooRead = AclBindingBuilder
+                .deny()
+                .userPrincipal("foo")
+                .literal(ResourceType.TOPIC, "foo")
+                .operation(AclOperation.READ)
+                .build();
+        AclBinding denyBarRead = AclBindingBuilder
+                .deny()
+                .userPrincipal("bar")
+                .literal(ResourceType.GROUP, "bar")
+                .operation(AclOperation.READ)
+                .build();
+
+        AclCheckOptions options = AclCheckOptions.builder().explain(true).build();
+        try (AclCheckContext ctx = new AclCheckContext(options)) {
+            SupersetResult superset = ctx.supersetOf(
+                    AclPolicy.fromAclBindings(Arrays.asList(barRead, fooAll)),
+                    AclPolicy.fromAclBindings(Arrays.asList(fooRead)));
+            assertTrue(superset.isSuperset());
+            assertEquals(Arrays.asList(1), superset.explanation().get().p1Entries());
+            assertEquals(Collections.emptyList(), superset.explanation().get().p2Entries());
+
+            IntersectionResult intersection = ctx.intersection(
+                    AclPolicy.fromAclBindings(Arrays.asList(fooAll, denyBarRead, denyFooRead)),
+                    AclPolicy.fromAclBindings(Arrays.asList(fooRead)));
+            assertFalse(intersection.intersects());
+            assertEquals(Arrays.asList(2), intersection.explanation().get().p1Entries());
+            assertEquals(Collections.emptyList(), intersection.explanation().get().p2Entries());
+
+            // positive results are not explained
+            assertFalse(ctx.intersection(
+                    AclPolicy.fromAclBindings(Arrays.asList(fooAll)),
+                    AclPolicy.fromAclBindings(Arrays.asList(fooRead))
+            ).explanation().isPresent());
+        }
+    }
+
+    @Test
+    public void testSymmetryReduction() {
+        List<AclBinding> bindings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            bindings.add(AclBindingBuilder
+                                 .allow()
+                                 .userPrincipal("service-" + i)
+                                 .prefixed(ResourceType.TOPIC, "foo-")
+                                 .operation(AclOperation.READ)
+                                 .build());
+        }
+        AclPolicy policy = AclPolicy.fromAclBindings(bindings);
+        SymmetryReduction reduction = SymmetryReduction.of(policy);
+        assertEquals(99, reduction.collapsed());
+        assertEquals(1, reduction.reduce(policy).entries().stream().distinct().count());
+
+        AclPolicy target = new AclConstraintBuilder()
+                .userPrincipal(u -> u.startWith("service-"))
+                .host(h -> h.in("*"))
+                .operation(AclOperation.READ)
+                .resource(ResourceType.TOPIC, r -> r.startWith("foo-"))
+                .build().toPolicy();
+        AclCheckOptions options = AclCheckOptions.builder()
+                                                 .syntacticEngine(false)
+                                                 .symmetryReduction(true)
+                                                 .build();
+        try (AclCheckContext ctx = new AclCheckContext(options)) {
+            assertTrue(ctx.intersection(policy, target).intersects());
+
+            SupersetResult superset = ctx.supersetOf(policy, target);
+            assertFalse(superset.isSuperset());
+            RequestTuple counterexample = superset.counterexample().get();
+            assertFalse(policy.authorizes(counterexample));
+            assertTrue(target.authorizes(counterexample));
+
+            assertTrue(ctx.supersetOf(policy, AclPolicy.fromAclBindings(bindings.subList(10, 20))).isSuperset());
+        }
+    }
+
+    @Test
+    public void testSymmetryReductionKeepsDistinguishableLiterals() {
+        AclPolicy p1 = AclPolicy.fromAclBindings(Arrays.asList(
+                AclBindingBuilder
+                        .allow()
+                        .userPrincipal("s0")
+                        .literal(ResourceType.TOPIC, "foo")
+                        .operation(AclOperation.READ)
+                        .build()));
+        AclPolicy p2 = AclPolicy.fromAclBindings(Arrays.asList(
+                AclBindingBuilder
+                        .allow()
+                        .userPrincipal("s1")
+                        .literal(ResourceType.TOPIC, "foo")
+                        .operation(AclOperation.READ)
+                        .build()));
+        // s0 and s1 appear in entries of different policies, so swapping them changes both policies
+        assertEquals(0, SymmetryReduction.of(p1, p2).collapsed());
+
+        AclCheckOptions options = AclCheckOptions.builder()
+                                                 .syntacticEngine(false)
+                                                 .symmetryReduction(true)
+                                                 .build();
+        try (AclCheckContext ctx = new AclCheckContext(options)) {
+            assertFalse(ctx.intersection(p1, p2).intersects());
+            SupersetResult superset = ctx.supersetOf(p1, p2);
+            assertFalse(superset.isSuperset());
+            assertEquals("s1", superset.counterexample().get().userPrincipal());
+        }
+    }
+
     private static void withContext(Consumer<AclCheckContext> op) {
         try (AclCheckContext ctx = new AclCheckContext()) {
             op.accept(ctx);
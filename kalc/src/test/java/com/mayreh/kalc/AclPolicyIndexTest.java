@@ -0,0 +1,103 @@
+package com.mayreh.kalc;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+import org.junit.Test;
+
+public class AclPolicyIndexTest {
+    private static RequestTuple request(String userPrincipal,
+                                       AclOperation operation,
+                                       ResourceType resourceType,
+                                       String resourceName) {
+        return RequestTuple.builder()
+                           .userPrincipal(userPrincipal)
+                           .host("127.0.0.1")
+                           .operation(operation)
+                           .resourceType(resourceType)
+                           .resourceName(resourceName)
+                           .build();
+    }
+
+    @Test
+    public void testAuthorizes() {
+        AclPolicy policy = AclPolicy.fromAclBindings(
+                Arrays.asList(
+                        AclBindingBuilder
+                                .allow()
+                                .userPrincipal("admin")
+                                .literal(ResourceType.TOPIC, "*")
+                                .operation(AclOperation.ALL)
+                                .build(),
+                        AclBindingBuilder
+                                .allow()
+                                .literal(ResourceType.TOPIC, "*")
+                                .operation(AclOperation.DESCRIBE)
+                                .build(),
+                        AclBindingBuilder
+                                .allow()
+                                .userPrincipal("foo-producer")
+                                .prefixed(ResourceType.TOPIC, "foo-")
+                                .operation(AclOperation.WRITE)
+                                .build(),
+                        AclBindingBuilder
+                                .deny()
+                                .userPrincipal("foo-producer")
+                                .literal(ResourceType.TOPIC, "foo-secret")
+                                .operation(AclOperation.ALL)
+                                .build()));
+
+        assertTrue(policy.authorizes(request("admin", AclOperation.ALTER, ResourceType.TOPIC, "bar")));
+        assertTrue(policy.authorizes(request("baz", AclOperation.DESCRIBE, ResourceType.TOPIC, "bar")));
+        assertTrue(policy.authorizes(request("foo-producer", AclOperation.WRITE, ResourceType.TOPIC, "foo-1")));
+        assertFalse(policy.authorizes(request("foo-producer", AclOperation.WRITE, ResourceType.TOPIC, "bar")));
+        assertFalse(policy.authorizes(request("foo-producer", AclOperation.WRITE, ResourceType.TOPIC, "foo-secret")));
+        assertFalse(policy.authorizes(request("foo-producer", AclOperation.DESCRIBE, ResourceType.TOPIC, "foo-secret")));
+        assertFalse(policy.authorizes(request("admin", AclOperation.ALTER, ResourceType.GROUP, "bar")));
+    }
+
+    @Test
+    public void testConsistentWithSolver() {
+        AclPolicy policy = new AclPolicy(Arrays.asList(
+                new AclPolicy.Entry(
+                        AclPolicy.Entry.PermissionType.Allow,
+                        new AclConstraintBuilder()
+                                .userPrincipal(u -> u.startWith("svc-"))
+                                .host(h -> h.in("*"))
+                                .notOperation(AclOperation.DELETE)
+                                .resource(ResourceType.TOPIC, r -> r.endWith("-log"))
+                                .build()),
+                new AclPolicy.Entry(
+                        AclPolicy.Entry.PermissionType.Deny,
+                        new AclConstraintBuilder()
+                                .userPrincipal(u -> u.in("svc-legacy"))
+                                .host(h -> h.in("*"))
+                                .operation(AclOperation.ALL)
+                                .resource(ResourceType.TOPIC, r -> r.contain("audit"))
+                                .build())));
+
+        RequestTuple[] requests = {
+                request("svc-a", AclOperation.READ, ResourceType.TOPIC, "app-log"),
+                request("svc-a", AclOperation.DELETE, ResourceType.TOPIC, "app-log"),
+                request("svc-legacy", AclOperation.READ, ResourceType.TOPIC, "audit-log"),
+                request("svc-legacy", AclOperation.READ, ResourceType.TOPIC, "app-log"),
+                request("user-a", AclOperation.READ, ResourceType.TOPIC, "app-log"),
+        };
+        try (AclCheckContext ctx = new AclCheckContext()) {
+            for (RequestTuple request : requests) {
+                AclPolicy target = new AclConstraintBuilder()
+                        .userPrincipal(u -> u.in(request.userPrincipal()))
+                        .host(h -> h.in(request.host()))
+                        .operation(request.operation())
+                        .resource(request.resourceType(), r -> r.in(request.resourceName()))
+                        .build().toPolicy();
+                assertTrue(request.toString(),
+                           policy.authorizes(request) == ctx.intersection(policy, target).intersects());
+            }
+        }
+    }
+}
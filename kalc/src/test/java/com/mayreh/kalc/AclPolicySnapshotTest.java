@@ -0,0 +1,106 @@
+package com.mayreh.kalc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mayreh.kalc.AclPolicy.Entry;
+import com.mayreh.kalc.AclPolicy.Entry.PermissionType;
+
+public class AclPolicySnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        AclPolicy policy = new AclPolicy(Arrays.asList(
+                Entry.fromAclBinding(AclBindingBuilder
+                                             .allow()
+                                             .userPrincipal("foo")
+                                             .prefixed(ResourceType.TOPIC, "foo-")
+                                             .operation(AclOperation.ALL)
+                                             .build()),
+                Entry.fromAclBinding(AclBindingBuilder
+                                             .deny()
+                                             .userPrincipal("foo")
+                                             .host("192.0.2.1")
+                                             .literal(ResourceType.GROUP, "foo-group")
+                                             .operation(AclOperation.READ)
+                                             .build()),
+                new Entry(PermissionType.Allow,
+                          new AclConstraintBuilder()
+                                  .userPrincipal(u -> u.in("bar", "\u30e6\u30fc\u30b6\u30fc").negate())
+                                  .host(h -> h.in("*"))
+                                  .notOperation(AclOperation.DELETE)
+                                  .resource(ResourceType.TOPIC, r -> r.endWith("-log", "-audit"))
+                                  .build())));
+
+        Path path = folder.newFile("policy.bin").toPath();
+        AclPolicySnapshot.write(policy, path);
+
+        assertTrue(AclPolicySnapshot.isSnapshot(path));
+        AclPolicy read = AclPolicySnapshot.read(path);
+        assertEquals(policy, read);
+        // strings are shared among conditions
+        assertSame(read.entries().get(0).constraint().userPrincipal().value().get(0),
+                   read.entries().get(1).constraint().userPrincipal().value().get(0));
+    }
+
+    @Test
+    public void testMalformedSnapshot() throws IOException {
+        AclPolicy policy = AclPolicy.fromAclBindings(Arrays.asList(
+                AclBindingBuilder
+                        .allow()
+                        .userPrincipal("foo")
+                        .literal(ResourceType.TOPIC, "foo-topic")
+                        .operation(AclOperation.READ)
+                        .build(),
+                AclBindingBuilder
+                        .allow()
+                        .userPrincipal("foo")
+                        .literal(ResourceType.GROUP, "foo-group")
+                        .operation(AclOperation.READ)
+                        .build()));
+        Path path = folder.newFile("policy.bin").toPath();
+        AclPolicySnapshot.write(policy, path);
+        byte[] content = Files.readAllBytes(path);
+
+        // truncated at every position
+        for (int length = 4; length < content.length; length++) {
+            byte[] truncated = Arrays.copyOf(content, length);
+            assertThrows(IllegalArgumentException.class, () -> AclPolicySnapshot.read(ByteBuffer.wrap(truncated)));
+        }
+        // every byte corrupted
+        for (int i = 5; i < content.length; i++) {
+            byte[] corrupted = content.clone();
+            corrupted[i] = (byte) 0x7F;
+            try {
+                AclPolicySnapshot.read(ByteBuffer.wrap(corrupted));
+            } catch (IllegalArgumentException e) {
+                // expected unless the corrupted byte happens to be valid
+            }
+        }
+    }
+
+    @Test
+    public void testIsSnapshot() throws IOException {
+        Path path = folder.newFile("policy.yml").toPath();
+        Files.write(path, "---\nentries: []\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(AclPolicySnapshot.isSnapshot(path));
+    }
+}
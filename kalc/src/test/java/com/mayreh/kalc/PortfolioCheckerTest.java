@@ -0,0 +1,87 @@
+package com.mayreh.kalc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+import org.junit.Test;
+
+import com.mayreh.kalc.AclCheckContext.IntersectionResult;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+import com.mayreh.kalc.PortfolioChecker.Outcome;
+
+public class PortfolioCheckerTest {
+    @Test
+    public void testRace() {
+        AclPolicy policy = new AclConstraintBuilder()
+                .userPrincipal(u -> u.endWith("-producer"))
+                .host(h -> h.in("*"))
+                .operation(AclOperation.WRITE)
+                .resource(ResourceType.TOPIC, r -> r.startWith("foo-"))
+                .build().toPolicy();
+        AclPolicy target = new AclConstraintBuilder()
+                .userPrincipal(u -> u.in("foo-producer", "bar-consumer"))
+                .host(h -> h.in("*"))
+                .operation(AclOperation.WRITE)
+                .resource(ResourceType.TOPIC, r -> r.in("foo-bar"))
+                .build().toPolicy();
+
+        AclCheckOptions options = AclCheckOptions.builder().syntacticEngine(false).build();
+        try (PortfolioChecker checker = new PortfolioChecker(PortfolioChecker.defaultConfigurations(options))) {
+            Outcome<IntersectionResult> intersection = checker.intersection(policy, target);
+            assertTrue(intersection.result().intersects());
+            assertTrue(intersection.winner().isPresent());
+
+            Outcome<SupersetResult> superset = checker.supersetOf(policy, target);
+            assertFalse(superset.result().isSuperset());
+            assertTrue(target.authorizes(superset.result().counterexample().get()));
+            assertFalse(policy.authorizes(superset.result().counterexample().get()));
+
+            // losers of the previous races must not affect subsequent checks
+            for (int i = 0; i < 5; i++) {
+                assertTrue(checker.intersection(policy, target).result().intersects());
+            }
+            assertEquals(7L, checker.wins().values().stream().mapToLong(Long::longValue).sum());
+        }
+    }
+
+    @Test
+    public void testConcurrentRaces() throws Exception {
+        AclPolicy policy = new AclConstraintBuilder()
+                .userPrincipal(u -> u.endWith("-producer"))
+                .host(h -> h.in("*"))
+                .operation(AclOperation.WRITE)
+                .resource(ResourceType.TOPIC, r -> r.startWith("foo-"))
+                .build().toPolicy();
+        AclCheckOptions options = AclCheckOptions.builder().syntacticEngine(false).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (PortfolioChecker checker = new PortfolioChecker(PortfolioChecker.defaultConfigurations(options))) {
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                boolean expected = i % 2 == 0;
+                String topic = expected ? "foo-bar" : "bar-foo";
+                AclPolicy target = new AclConstraintBuilder()
+                        .userPrincipal(u -> u.in("foo-producer"))
+                        .host(h -> h.in("*"))
+                        .operation(AclOperation.WRITE)
+                        .resource(ResourceType.TOPIC, r -> r.in(topic))
+                        .build().toPolicy();
+                futures.add(executor.submit(
+                        () -> checker.intersection(policy, target).result().intersects() == expected));
+            }
+            for (Future<Boolean> future : futures) {
+                assertTrue(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mayreh.kalc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.kafka.common.acl.AclBinding;
+import org.apache.kafka.common.acl.AclOperation;
+import org.apache.kafka.common.resource.ResourceType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mayreh.kalc.AclCheckContext.Engine;
+import com.mayreh.kalc.AclCheckContext.SupersetResult;
+
+public class ResultCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AclBinding fooAll = AclBindingBuilder
+            .allow()
+            .userPrincipal("foo")
+            .prefixed(ResourceType.TOPIC, "foo")
+            .operation(AclOperation.ALL)
+            .build();
+    private final AclBinding barRead = AclBindingBuilder
+            .allow()
+            .userPrincipal("bar")
+            .literal(ResourceType.GROUP, "bar")
+            .operation(AclOperation.READ)
+            .build();
+
+    @Test
+    public void testDigestIsCanonical() {
+        String digest = ResultCache.digest(AclPolicy.fromAclBindings(Arrays.asList(fooAll, barRead)));
+        assertEquals(digest, ResultCache.digest(AclPolicy.fromAclBindings(Arrays.asList(barRead, fooAll))));
+        assertEquals(digest, ResultCache.digest(
+                AclPolicy.fromAclBindings(Arrays.asList(barRead, fooAll, barRead))));
+        assertNotEquals(digest, ResultCache.digest(AclPolicy.fromAclBindings(Arrays.asList(fooAll))));
+    }
+
+    @Test
+    public void testCachedResult() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        ResultCache cache = new ResultCache(dir, 1024 * 1024);
+        AclPolicy base = AclPolicy.fromAclBindings(Arrays.asList(barRead));
+        AclPolicy target = AclPolicy.fromAclBindings(Arrays.asList(fooAll));
+        AclCheckOptions options = AclCheckOptions.builder().build();
+
+        AtomicInteger checks = new AtomicInteger();
+        SupersetResult result = cache.supersetOf(base, target, options, () -> {
+            checks.incrementAndGet();
+            try (AclCheckContext ctx = new AclCheckContext(options)) {
+                return ctx.supersetOf(base, target);
+            }
+        });
+        assertFalse(result.isSuperset());
+
+        SupersetResult cached = cache.supersetOf(base, target, options, () -> {
+            throw new AssertionError("must be cached");
+        });
+        assertEquals(1, checks.get());
+        assertEquals(Engine.Cache, cached.engine());
+        assertFalse(cached.isSuperset());
+        assertEquals(result.counterexample(), cached.counterexample());
+
+        // different options are cached separately
+        AclCheckOptions other = options.toBuilder().syntacticEngine(false).build();
+        cache.supersetOf(base, target, other, () -> {
+            checks.incrementAndGet();
+            return result;
+        });
+        assertEquals(2, checks.get());
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        Path dir = folder.newFolder().toPath();
+        AclPolicy base = AclPolicy.fromAclBindings(Arrays.asList(barRead));
+        AclPolicy first = AclPolicy.fromAclBindings(Arrays.asList(fooAll));
+        AclPolicy second = AclPolicy.fromAclBindings(Arrays.asList(barRead, fooAll));
+        AclCheckOptions options = AclCheckOptions.builder().build();
+        Supplier<SupersetResult> check = () -> SupersetResult.builder().isSuperset(true).build();
+
+        // measure a result to build the cache which fits exactly one
+        new ResultCache(dir, Long.MAX_VALUE).supersetOf(base, first, options, check);
+        Path firstFile = list(dir).get(0);
+        ResultCache cache = new ResultCache(dir, Files.size(firstFile));
+
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000L);
+        Files.setLastModifiedTime(firstFile, old);
+        cache.supersetOf(base, first, options, () -> {
+            throw new AssertionError("must be cached");
+        });
+        assertTrue(Files.getLastModifiedTime(firstFile).compareTo(old) > 0);
+
+        // file timestamps are coarser than the clock, so backdate the first entry to order it deterministically
+        Files.setLastModifiedTime(firstFile, old);
+        cache.supersetOf(base, second, options, check);
+        List<Path> files = list(dir);
+        assertEquals(1, files.size());
+        assertNotEquals(firstFile, files.get(0));
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}